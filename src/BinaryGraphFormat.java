@@ -0,0 +1,207 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes graphs in a compact binary format so that a graph can
+ * be brought up by bulk array copies instead of tokenizing text. The text
+ * .graph format remains the interchange format; use main to convert.
+ * <p>
+ * Layout, all values little-endian:
+ * <pre>
+ *   header      int magic 'RGRB', int version, int vertexCount,
+ *               int edgeCount, int nameBytes
+ *   vertices    double[vertexCount] lat, double[vertexCount] lon
+ *   edges       int[edgeCount] from, int[edgeCount] to
+ *   names       int[vertexCount + 1] offsets, byte[nameBytes] UTF-8 names
+ *   checksum    long CRC32 of every byte before it
+ * </pre>
+ */
+public class BinaryGraphFormat {
+    public static final int MAGIC = 0x42524752; // "RGRB" read little-endian
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    /**
+     * Checks whether the channel holds a file in this format, without
+     * moving the channel's position.
+     * @param channel an open channel on a graph file
+     * @return true if the file starts with the binary magic number
+     * @throws IOException if the channel cannot be read
+     */
+    public static boolean isBinary(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long position = channel.position();
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, position + magic.position()) < 0) {
+                return false;
+            }
+        }
+        return magic.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Reads a binary graph from the channel's current position.
+     * @param channel an open channel on the binary graph file
+     * @return the graph data stored in the file
+     * @throws IOException if the file is truncated, has an unknown version
+     * or fails its checksum
+     */
+    public static GraphData read(FileChannel channel) throws IOException {
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("binary graph file too large to map");
+        }
+        if (size < HEADER_BYTES + Long.BYTES) {
+            throw new IOException("Could not read binary graph file: truncated");
+        }
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, size)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Could not read binary graph file: bad magic number");
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary graph version " + version);
+        }
+        int numVert = buf.getInt();
+        int numEdges = buf.getInt();
+        int nameBytes = buf.getInt();
+        if (numVert < 0 || numEdges < 0 || nameBytes < 0
+            || size != byteSize(numVert, numEdges, nameBytes)) {
+            throw new IOException("Could not read binary graph file: bad header");
+        }
+
+        int payload = (int) size - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().position(0).limit(payload));
+        if (crc.getValue() != buf.getLong(payload)) {
+            throw new IOException("Could not read binary graph file: checksum mismatch");
+        }
+
+        double[] lats = new double[numVert];
+        double[] lons = new double[numVert];
+        buf.asDoubleBuffer().get(lats).get(lons);
+        buf.position(buf.position() + 2 * numVert * Double.BYTES);
+
+        int[] from = new int[numEdges];
+        int[] to = new int[numEdges];
+        buf.asIntBuffer().get(from).get(to);
+        buf.position(buf.position() + 2 * numEdges * Integer.BYTES);
+
+        int[] offsets = new int[numVert + 1];
+        buf.asIntBuffer().get(offsets);
+        buf.position(buf.position() + offsets.length * Integer.BYTES);
+        if (offsets[0] != 0 || offsets[numVert] != nameBytes) {
+            throw new IOException("Could not read binary graph file: bad name offsets");
+        }
+        for (int i = 0; i < numVert; i++) {
+            if (offsets[i + 1] < offsets[i]) {
+                throw new IOException("Could not read binary graph file: bad name offsets");
+            }
+        }
+        byte[] utf8 = new byte[nameBytes];
+        buf.get(utf8);
+        String[] names = new String[numVert];
+        for (int i = 0; i < numVert; i++) {
+            names[i] = new String(utf8, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+
+        for (int k = 0; k < numEdges; k++) {
+            if (from[k] < 0 || from[k] >= numVert || to[k] < 0 || to[k] >= numVert) {
+                throw new IOException("Could not read binary graph file: vertex index out of range");
+            }
+        }
+        return new GraphData(names, lats, lons, from, to);
+    }
+
+    /**
+     * Writes the graph to the channel in the binary format.
+     * @param data the graph to write
+     * @param channel an open, writable channel
+     * @throws IOException if writing fails
+     */
+    public static void write(GraphData data, FileChannel channel) throws IOException {
+        int numVert = data.vertexCount();
+        int numEdges = data.edgeCount();
+        byte[][] encoded = new byte[numVert][];
+        long nameBytes = 0;
+        for (int i = 0; i < numVert; i++) {
+            encoded[i] = data.name(i).getBytes(StandardCharsets.UTF_8);
+            nameBytes += encoded[i].length;
+        }
+        long size = byteSize(numVert, numEdges, nameBytes);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("graph too large for the binary format");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(numVert).putInt(numEdges).putInt((int) nameBytes);
+        for (int i = 0; i < numVert; i++) {
+            buf.putDouble(data.lat(i));
+        }
+        for (int i = 0; i < numVert; i++) {
+            buf.putDouble(data.lon(i));
+        }
+        for (int k = 0; k < numEdges; k++) {
+            buf.putInt(data.edgeFrom(k));
+        }
+        for (int k = 0; k < numEdges; k++) {
+            buf.putInt(data.edgeTo(k));
+        }
+        int offset = 0;
+        buf.putInt(offset);
+        for (int i = 0; i < numVert; i++) {
+            offset += encoded[i].length;
+            buf.putInt(offset);
+        }
+        for (byte[] name : encoded) {
+            buf.put(name);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static long byteSize(int numVert, int numEdges, long nameBytes) {
+        return HEADER_BYTES
+            + 2L * numVert * Double.BYTES
+            + 2L * numEdges * Integer.BYTES
+            + (numVert + 1L) * Integer.BYTES
+            + nameBytes
+            + Long.BYTES;
+    }
+
+    /**
+     * Converts a .graph text file to the binary format.
+     * Usage: java BinaryGraphFormat input.graph output.bgraph
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: java BinaryGraphFormat input.graph output.bgraph");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        GraphData data;
+        try (FileInputStream in = new FileInputStream(args[0])) {
+            data = GraphData.parse(in.getChannel());
+        }
+        try (FileOutputStream out = new FileOutputStream(args[1])) {
+            write(data, out.getChannel());
+        }
+        System.out.printf("wrote %s: %d vertices, %d edges in %d ms\n", args[1],
+                          data.vertexCount(), data.edgeCount(),
+                          (System.nanoTime() - start) / 1_000_000);
+    }
+}
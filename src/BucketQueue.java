@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * Dial's bucket queue for Dijkstra's algorithm on integer weights no
+ * larger than maxStep. Every queued key lies between the current minimum
+ * and the minimum plus maxStep, so a circular array of more than maxStep
+ * buckets, one per key, holds them without collisions: adding is an
+ * append and removing moves forward to the next non-empty bucket, never
+ * comparing keys. A bitmap of non-empty buckets lets that move skip 64
+ * empty buckets at a time, which matters at fine resolutions where most
+ * buckets stay empty.
+ * <p>
+ * There is no decrease-key: a vertex may be added more than once, and
+ * the search skips stale copies as they come out. Bucket arrays are
+ * allocated when first used and kept for later searches.
+ */
+public class BucketQueue {
+    private final int[][] buckets;
+    private final int[] counts;
+    // bit b of word b / 64 is set when bucket b is not empty
+    private final long[] occupied;
+    private final int mask;
+    private long current;
+    private int size;
+
+    /**
+     * @param maxStep the largest difference between a key added and the
+     * smallest key in the queue
+     */
+    public BucketQueue(int maxStep) {
+        int capacity = Math.max(64, Integer.highestOneBit(Math.max(1, maxStep)) << 1);
+        buckets = new int[capacity][];
+        counts = new int[capacity];
+        occupied = new long[capacity / 64];
+        mask = capacity - 1;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(occupied, 0);
+        current = 0;
+        size = 0;
+    }
+
+    /**
+     * Adds vertex with a key from the current minimum up to maxStep past
+     * it; keys outside that window would be filed in the wrong bucket.
+     */
+    public void add(int vertex, long key) {
+        int b = (int) (key & mask);
+        int[] bucket = buckets[b];
+        if (bucket == null) {
+            bucket = buckets[b] = new int[8];
+        } else if (counts[b] == bucket.length) {
+            bucket = buckets[b] = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+        bucket[counts[b]++] = vertex;
+        occupied[b >>> 6] |= 1L << b;
+        size++;
+    }
+
+    /**
+     * @return the smallest key in the queue, which must not be empty
+     */
+    public long minKey() {
+        int b = (int) (current & mask);
+        long word = occupied[b >>> 6] & (-1L << b);
+        while (word == 0) {
+            // on to the next word, wrapping around the circle
+            current += 64 - (current & 63);
+            b = (int) (current & mask);
+            word = occupied[b >>> 6];
+        }
+        current += Long.numberOfTrailingZeros(word) - (b & 63);
+        return current;
+    }
+
+    /**
+     * Removes an entry with the smallest key.
+     * @return its vertex
+     */
+    public int removeMin() {
+        int b = (int) (minKey() & mask);
+        size--;
+        if (--counts[b] == 0) {
+            occupied[b >>> 6] &= ~(1L << b);
+        }
+        return buckets[b][counts[b]];
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Arrays;
+
+/**
+ * Connected components of a RoadGraph, each with its own KdTree, so a
+ * point can be snapped to the closest vertex that is actually reachable
+ * from somewhere else. Component ids are the RoadGraph's labels.
+ */
+public class ComponentIndex {
+    private final RoadGraph graph;
+    private final KdTree[] trees;
+
+    /**
+     * Indexes each connected component of the graph separately.
+     */
+    public ComponentIndex(RoadGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        int count = graph.componentCount();
+
+        // group vertex ids by component, ascending within each group
+        int[] start = new int[count + 1];
+        for (int v = 0; v < n; v++) {
+            start[graph.component(v) + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, count);
+        for (int v = 0; v < n; v++) {
+            members[fill[graph.component(v)]++] = v;
+        }
+        trees = new KdTree[count];
+        for (int c = 0; c < count; c++) {
+            trees[c] = new KdTree(graph, Arrays.copyOfRange(members, start[c], start[c + 1]));
+        }
+    }
+
+    /**
+     * @return the number of connected components
+     */
+    public int count() {
+        return trees.length;
+    }
+
+    /**
+     * @return the component id of vertex v
+     */
+    public int component(int v) {
+        return graph.component(v);
+    }
+
+    /**
+     * @return the number of vertices in component c
+     */
+    public int size(int c) {
+        return trees[c].size();
+    }
+
+    /**
+     * Finds the vertex of component c closest to p, breaking ties by the
+     * lowest id as KdTree does.
+     * @param p a point, not necessarily in the graph
+     * @param c a component id
+     * @return the closest vertex id in the component
+     * @throws IllegalArgumentException if c is not a component id
+     */
+    public int nearest(Point p, int c) {
+        if (c < 0 || c >= trees.length) {
+            throw new IllegalArgumentException("No component " + c);
+        }
+        return trees[c].nearest(p);
+    }
+}
@@ -0,0 +1,570 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Contraction Hierarchy over a RoadGraph. Vertices are contracted one at
+ * a time, least important first; contracting v removes it from the
+ * remaining graph and adds a shortcut u-w, remembering v as its middle
+ * vertex, for each pair of neighbors whose only shortest connection ran
+ * through v. The result is stored as an upward graph in CSR form: the
+ * arcs of v lead to neighbors of higher rank, with a weight and either
+ * the middle vertex of a shortcut or -1 for an original edge.
+ * <p>
+ * A query searches upward from both ends (see RouteSearch.hierarchy) and
+ * the shortcuts on the path it finds are unpacked back into road edges
+ * with unpack. The graph is undirected, so one upward graph serves both
+ * search directions.
+ * <p>
+ * Vertex order comes from a lazily updated priority queue keyed on edge
+ * difference (shortcuts added minus arcs removed) plus the number of
+ * already contracted neighbors, which spreads contraction evenly.
+ * <p>
+ * The parallel builder works in rounds instead. Each round selects the
+ * vertices whose (priority, id) is smaller than that of every remaining
+ * neighbor. No two of them are adjacent, so their shortcuts can be found
+ * concurrently on a ForkJoinPool while the remaining graph is read-only;
+ * witness searches in a round avoid every vertex being contracted in it.
+ * Shortcuts are then applied in id order. Every step depends only on the
+ * graph, not on scheduling, so the output is the same for any number of
+ * threads.
+ */
+public class ContractionHierarchy {
+    // witness searches give up after settling this many vertices; giving
+    // up early only costs extra shortcuts, never correctness
+    static final int WITNESS_SETTLE_LIMIT = 128;
+
+    private final RoadGraph graph;
+    private final int[] rank;
+    private final int[] upFirst;
+    private final int[] upTarget;
+    private final double[] upWeight;
+    private final int[] upMiddle;
+    private final int shortcutCount;
+    private final long buildMillis;
+
+    /**
+     * Contracts every vertex of the graph on the calling thread.
+     */
+    public ContractionHierarchy(RoadGraph graph) {
+        long start = System.nanoTime();
+        this.graph = graph;
+        int n = graph.size();
+        Contractor contractor = new Contractor(graph);
+        Contractor.WitnessSearch witness = contractor.new WitnessSearch();
+        rank = new int[n];
+
+        PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+        for (int v = 0; v < n; v++) {
+            queue.add(new QueueEntry(v, contractor.priority(v, witness)));
+        }
+        int next = 0;
+        while (!queue.isEmpty()) {
+            int v = queue.remove().vertex;
+            if (contractor.isContracted(v)) {
+                continue;
+            }
+            double priority = contractor.priority(v, witness);
+            if (!queue.isEmpty() && priority > queue.peek().key) {
+                queue.add(new QueueEntry(v, priority));
+                continue;
+            }
+            rank[v] = next++;
+            Shortcuts shortcuts = new Shortcuts();
+            contractor.findShortcuts(v, witness, shortcuts);
+            for (int u : contractor.contract(v, shortcuts)) {
+                queue.add(new QueueEntry(u, contractor.priority(u, witness)));
+            }
+        }
+
+        contractor.finish();
+        upFirst = contractor.upFirst;
+        upTarget = contractor.upTarget;
+        upWeight = contractor.upWeight;
+        upMiddle = contractor.upMiddle;
+        shortcutCount = contractor.shortcuts;
+        buildMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Contracts the graph in rounds of independent vertices, finding each
+     * round's shortcuts on a ForkJoinPool with the given parallelism.
+     * @param graph the graph to preprocess
+     * @param threads the number of worker threads
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public ContractionHierarchy(RoadGraph graph, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        long start = System.nanoTime();
+        this.graph = graph;
+        int n = graph.size();
+        Contractor contractor = new Contractor(graph);
+        ThreadLocal<Contractor.WitnessSearch> witness =
+            ThreadLocal.withInitial(() -> contractor.new WitnessSearch());
+        rank = new int[n];
+        double[] priority = new double[n];
+        boolean[] dirty = new boolean[n];
+        Arrays.fill(dirty, true);
+        Shortcuts[] found = new Shortcuts[n];
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int[] remaining = new int[n];
+            for (int v = 0; v < n; v++) {
+                remaining[v] = v;
+            }
+            int remainingCount = n;
+            int next = 0;
+            while (remainingCount > 0) {
+                int[] round = Arrays.copyOf(remaining, remainingCount);
+                inPool(pool, () -> Arrays.stream(round).parallel().forEach(v -> {
+                    if (dirty[v]) {
+                        priority[v] = contractor.priority(v, witness.get());
+                        dirty[v] = false;
+                    }
+                }));
+                int[] selected = inPool(pool, () -> Arrays.stream(round).parallel()
+                    .filter(v -> contractor.isLocalMinimum(v, priority))
+                    .toArray());
+                for (int v : selected) {
+                    contractor.exclude(v);
+                }
+                inPool(pool, () -> Arrays.stream(selected).parallel().forEach(v -> {
+                    found[v] = new Shortcuts();
+                    contractor.findShortcuts(v, witness.get(), found[v]);
+                }));
+                for (int v : selected) {
+                    rank[v] = next++;
+                    for (int u : contractor.contract(v, found[v])) {
+                        dirty[u] = true;
+                    }
+                    found[v] = null;
+                }
+
+                remainingCount = 0;
+                for (int v : round) {
+                    if (!contractor.isContracted(v)) {
+                        remaining[remainingCount++] = v;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        contractor.finish();
+        upFirst = contractor.upFirst;
+        upTarget = contractor.upTarget;
+        upWeight = contractor.upWeight;
+        upMiddle = contractor.upMiddle;
+        shortcutCount = contractor.shortcuts;
+        buildMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // runs the task on the pool, so parallel streams inside it use the pool
+    private static <T> T inPool(ForkJoinPool pool, Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while contracting", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Contraction failed", e.getCause());
+        }
+    }
+
+    private static void inPool(ForkJoinPool pool, Runnable task) {
+        inPool(pool, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the graph this hierarchy was built from
+     */
+    public RoadGraph graph() {
+        return graph;
+    }
+
+    /**
+     * @return the position of v in the contraction order
+     */
+    public int rank(int v) {
+        return rank[v];
+    }
+
+    public int firstUp(int v) {
+        return upFirst[v];
+    }
+
+    public int endUp(int v) {
+        return upFirst[v + 1];
+    }
+
+    public int upTarget(int arc) {
+        return upTarget[arc];
+    }
+
+    public double upWeight(int arc) {
+        return upWeight[arc];
+    }
+
+    /**
+     * @return the number of shortcuts added during contraction
+     */
+    public int shortcutCount() {
+        return shortcutCount;
+    }
+
+    /**
+     * @return wall-clock milliseconds spent building the hierarchy
+     */
+    public long buildMillis() {
+        return buildMillis;
+    }
+
+    /**
+     * Appends the road vertices after u up to and including w, expanding
+     * the hierarchy edge between u and w and any shortcuts inside it.
+     * @param u one end of an edge of the hierarchy
+     * @param w the other end
+     * @param out receives the points after u, ending with w
+     */
+    public void unpack(int u, int w, List<Point> out) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = u;
+        stack[top++] = w;
+        while (top > 0) {
+            int to = stack[--top];
+            int from = stack[--top];
+            int middle = middle(from, to);
+            if (middle < 0) {
+                out.add(graph.point(to));
+                continue;
+            }
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // the second half goes on the stack first so it is expanded last
+            stack[top++] = middle;
+            stack[top++] = to;
+            stack[top++] = from;
+            stack[top++] = middle;
+        }
+    }
+
+    // middle vertex of the hierarchy edge between u and w, -1 if original
+    private int middle(int u, int w) {
+        int low = rank[u] < rank[w] ? u : w;
+        int high = low == u ? w : u;
+        for (int arc = upFirst[low]; arc < upFirst[low + 1]; arc++) {
+            if (upTarget[arc] == high) {
+                return upMiddle[arc];
+            }
+        }
+        throw new IllegalStateException("No hierarchy edge between " + u + " and " + w);
+    }
+
+    /**
+     * Builds the hierarchy for a .graph or binary graph file with 1, 2,
+     * 4, ... threads up to the number of processors, printing the build
+     * time and shortcut count of each.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: java ContractionHierarchy file.graph");
+            System.exit(1);
+        }
+        GraphData data;
+        try (FileInputStream in = new FileInputStream(args[0]);
+             FileChannel channel = in.getChannel()) {
+            data = BinaryGraphFormat.isBinary(channel)
+                ? BinaryGraphFormat.read(channel) : GraphData.parse(channel);
+        }
+        RoadGraph graph = new RoadGraph(data);
+        ContractionHierarchy sequential = new ContractionHierarchy(graph);
+        System.out.printf("sequential: %d ms, %d shortcuts\n",
+                          sequential.buildMillis(), sequential.shortcutCount());
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            ContractionHierarchy ch = new ContractionHierarchy(graph, threads);
+            System.out.printf("%d threads: %d ms, %d shortcuts\n",
+                              threads, ch.buildMillis(), ch.shortcutCount());
+        }
+    }
+
+    /**
+     * Remaining graph during contraction, with adjacency lists that grow
+     * as shortcuts are added and shrink as vertices are contracted, plus
+     * the upward arcs recorded so far.
+     */
+    static class Contractor {
+        private final int[][] nbr;
+        private final double[][] wt;
+        private final int[][] mid;
+        private final int[] deg;
+        private final int[] deleted;
+        private final boolean[] contracted;
+        private final boolean[] excluded;
+
+        int[] upFirst;
+        int[] upTarget;
+        double[] upWeight;
+        int[] upMiddle;
+        int shortcuts;
+        private final int[][] upTo;
+        private final double[][] upW;
+        private final int[][] upMid;
+
+        Contractor(RoadGraph graph) {
+            int n = graph.size();
+            nbr = new int[n][];
+            wt = new double[n][];
+            mid = new int[n][];
+            deg = new int[n];
+            deleted = new int[n];
+            contracted = new boolean[n];
+            excluded = new boolean[n];
+            upTo = new int[n][];
+            upW = new double[n][];
+            upMid = new int[n][];
+            for (int v = 0; v < n; v++) {
+                int d = graph.degree(v);
+                nbr[v] = new int[Math.max(d, 2)];
+                wt[v] = new double[Math.max(d, 2)];
+                mid[v] = new int[Math.max(d, 2)];
+                for (int arc = graph.firstArc(v); arc < graph.endArc(v); arc++) {
+                    nbr[v][deg[v]] = graph.target(arc);
+                    wt[v][deg[v]] = graph.weight(arc);
+                    mid[v][deg[v]] = -1;
+                    deg[v]++;
+                }
+            }
+        }
+
+        boolean isContracted(int v) {
+            return contracted[v];
+        }
+
+        /**
+         * Marks v as being contracted in the current round, so witness
+         * searches for the other vertices of the round avoid it.
+         */
+        void exclude(int v) {
+            excluded[v] = true;
+        }
+
+        /**
+         * @return true if v has a smaller (priority, id) than every
+         * neighbor still in the graph
+         */
+        boolean isLocalMinimum(int v, double[] priority) {
+            for (int k = 0; k < deg[v]; k++) {
+                int u = nbr[v][k];
+                if (priority[u] < priority[v] || (priority[u] == priority[v] && u < v)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the contraction priority of v in the current graph
+         */
+        double priority(int v, WitnessSearch witness) {
+            return findShortcuts(v, witness, null) - deg[v] + deleted[v];
+        }
+
+        /**
+         * Finds the shortcuts contracting v needs: for each pair of
+         * neighbors u, w the path u-v-w must be kept unless a witness
+         * path avoiding v is no longer. Only reads the remaining graph.
+         * @param out receives the shortcuts, or null to only count them
+         * @return the number of shortcuts needed
+         */
+        int findShortcuts(int v, WitnessSearch witness, Shortcuts out) {
+            int count = 0;
+            // each unordered pair once, searching from its first neighbor
+            for (int i = 0; i + 1 < deg[v]; i++) {
+                int u = nbr[v][i];
+                double maxVia = 0;
+                for (int j = i + 1; j < deg[v]; j++) {
+                    maxVia = Math.max(maxVia, wt[v][i] + wt[v][j]);
+                }
+                witness.search(u, v, maxVia);
+                for (int j = i + 1; j < deg[v]; j++) {
+                    int w = nbr[v][j];
+                    double via = wt[v][i] + wt[v][j];
+                    if (witness.distance(w) > via) {
+                        count++;
+                        if (out != null) {
+                            out.add(u, w, via);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Contracts v: adds its shortcuts, records its arcs as upward
+         * arcs and removes it from its neighbors' lists.
+         * @return the neighbors of v, whose priorities may have changed
+         */
+        int[] contract(int v, Shortcuts shortcuts) {
+            for (int k = 0; k < shortcuts.size; k++) {
+                addShortcut(shortcuts.from[k], shortcuts.to[k], shortcuts.weight[k], v);
+            }
+            int[] neighbors = Arrays.copyOf(nbr[v], deg[v]);
+            upTo[v] = neighbors;
+            upW[v] = Arrays.copyOf(wt[v], deg[v]);
+            upMid[v] = Arrays.copyOf(mid[v], deg[v]);
+            contracted[v] = true;
+            excluded[v] = false;
+            for (int u : neighbors) {
+                remove(u, v);
+                deleted[u]++;
+            }
+            nbr[v] = null;
+            wt[v] = null;
+            mid[v] = null;
+            return neighbors;
+        }
+
+        /**
+         * Bounded Dijkstra in the remaining graph, with its own distance
+         * labels so that several can run at once. Labels are reset by
+         * bumping the generation.
+         */
+        class WitnessSearch {
+            private final double[] dist = new double[deg.length];
+            private final int[] stamp = new int[deg.length];
+            private final IndexedHeap queue = new IndexedHeap(deg.length);
+            private int generation;
+
+            double distance(int w) {
+                return stamp[w] == generation ? dist[w] : Double.POSITIVE_INFINITY;
+            }
+
+            // settles vertices from source up to limit, avoiding skip
+            // and the vertices excluded for the current round
+            void search(int source, int skip, double limit) {
+                generation++;
+                queue.clear();
+                stamp[source] = generation;
+                dist[source] = 0.0;
+                queue.update(source, 0.0);
+                int settled = 0;
+                while (!queue.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+                    if (queue.minKey() > limit) break;
+                    int x = queue.removeMin();
+                    settled++;
+                    for (int k = 0; k < deg[x]; k++) {
+                        int y = nbr[x][k];
+                        if (y == skip || excluded[y]) continue;
+                        double d = dist[x] + wt[x][k];
+                        if (d < distance(y)) {
+                            stamp[y] = generation;
+                            dist[y] = d;
+                            queue.update(y, d);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void addShortcut(int u, int w, double weight, int via) {
+            shortcuts++;
+            link(u, w, weight, via);
+            link(w, u, weight, via);
+        }
+
+        // adds the arc u-w, or shortens an existing one
+        private void link(int u, int w, double weight, int via) {
+            for (int k = 0; k < deg[u]; k++) {
+                if (nbr[u][k] == w) {
+                    if (weight < wt[u][k]) {
+                        wt[u][k] = weight;
+                        mid[u][k] = via;
+                    }
+                    return;
+                }
+            }
+            if (deg[u] == nbr[u].length) {
+                int grow = nbr[u].length * 2;
+                nbr[u] = Arrays.copyOf(nbr[u], grow);
+                wt[u] = Arrays.copyOf(wt[u], grow);
+                mid[u] = Arrays.copyOf(mid[u], grow);
+            }
+            nbr[u][deg[u]] = w;
+            wt[u][deg[u]] = weight;
+            mid[u][deg[u]] = via;
+            deg[u]++;
+        }
+
+        private void remove(int u, int v) {
+            for (int k = 0; k < deg[u]; k++) {
+                if (nbr[u][k] == v) {
+                    deg[u]--;
+                    nbr[u][k] = nbr[u][deg[u]];
+                    wt[u][k] = wt[u][deg[u]];
+                    mid[u][k] = mid[u][deg[u]];
+                    return;
+                }
+            }
+        }
+
+        // packs the recorded upward arcs into CSR arrays
+        void finish() {
+            int n = upTo.length;
+            upFirst = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                upFirst[v + 1] = upFirst[v] + upTo[v].length;
+            }
+            upTarget = new int[upFirst[n]];
+            upWeight = new double[upFirst[n]];
+            upMiddle = new int[upFirst[n]];
+            for (int v = 0; v < n; v++) {
+                System.arraycopy(upTo[v], 0, upTarget, upFirst[v], upTo[v].length);
+                System.arraycopy(upW[v], 0, upWeight, upFirst[v], upW[v].length);
+                System.arraycopy(upMid[v], 0, upMiddle, upFirst[v], upMid[v].length);
+                upTo[v] = null;
+                upW[v] = null;
+                upMid[v] = null;
+            }
+        }
+    }
+
+    /**
+     * Shortcuts found for one vertex, as parallel arrays of endpoints
+     * and weights.
+     */
+    static class Shortcuts {
+        int[] from = new int[4];
+        int[] to = new int[4];
+        double[] weight = new double[4];
+        int size;
+
+        void add(int u, int w, double via) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+            }
+            from[size] = u;
+            to[size] = w;
+            weight[size] = via;
+            size++;
+        }
+    }
+}
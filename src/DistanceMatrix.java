@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * Shortest distances between every source and every target of a batch,
+ * computed with far fewer searches than one route per pair.
+ * <p>
+ * Without a hierarchy each source gets one Dijkstra search that stops
+ * once all targets are settled. With a Contraction Hierarchy the batch
+ * uses buckets: an upward search from each target leaves (target,
+ * distance) entries in a bucket at every vertex it reaches, then an
+ * upward search from each source scans the buckets of the vertices it
+ * reaches. Every shortest path in the hierarchy goes up from both ends
+ * to its highest vertex, so the smallest sum over the buckets met is the
+ * distance, and the work is one small search per source and per target.
+ */
+public class DistanceMatrix {
+    /**
+     * One Dijkstra search per source.
+     * @return distances[i][j] from sources[i] to targets[j], infinite
+     * where no route exists
+     */
+    public static double[][] compute(RouteSearch search, int[] sources, int[] targets) {
+        double[][] distances = new double[sources.length][targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            search.oneToMany(sources[i], targets, distances[i]);
+        }
+        return distances;
+    }
+
+    /**
+     * Bucket-based many-to-many search on a hierarchy.
+     * @return distances[i][j] from sources[i] to targets[j], infinite
+     * where no route exists
+     */
+    public static double[][] compute(ContractionHierarchy ch, RouteSearch search,
+                                     int[] sources, int[] targets) {
+        int n = ch.graph().size();
+        // entries left by the target searches, grouped by vertex below
+        int[] entryVertex = new int[16];
+        int[] entryTarget = new int[16];
+        double[] entryDist = new double[16];
+        int entries = 0;
+        for (int j = 0; j < targets.length; j++) {
+            int[] reached = search.upward(ch, targets[j]);
+            if (entries + reached.length > entryVertex.length) {
+                int capacity = Math.max(entries + reached.length, 2 * entryVertex.length);
+                entryVertex = Arrays.copyOf(entryVertex, capacity);
+                entryTarget = Arrays.copyOf(entryTarget, capacity);
+                entryDist = Arrays.copyOf(entryDist, capacity);
+            }
+            for (int v : reached) {
+                entryVertex[entries] = v;
+                entryTarget[entries] = j;
+                entryDist[entries] = search.distance(v);
+                entries++;
+            }
+        }
+
+        int[] bucketStart = new int[n + 1];
+        for (int e = 0; e < entries; e++) {
+            bucketStart[entryVertex[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            bucketStart[v + 1] += bucketStart[v];
+        }
+        int[] fill = Arrays.copyOf(bucketStart, n);
+        int[] bucketTarget = new int[entries];
+        double[] bucketDist = new double[entries];
+        for (int e = 0; e < entries; e++) {
+            int slot = fill[entryVertex[e]]++;
+            bucketTarget[slot] = entryTarget[e];
+            bucketDist[slot] = entryDist[e];
+        }
+
+        double[][] distances = new double[sources.length][targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            double[] row = distances[i];
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            for (int v : search.upward(ch, sources[i])) {
+                double d = search.distance(v);
+                for (int b = bucketStart[v]; b < bucketStart[v + 1]; b++) {
+                    double through = d + bucketDist[b];
+                    if (through < row[bucketTarget[b]]) {
+                        row[bucketTarget[b]] = through;
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Holds the raw contents of a .graph file: the vertex names and
+ * coordinates in file order, and the edges as pairs of vertex indexes.
+ * The text parser maps the file into memory and reads numbers straight
+ * from the bytes, so no Scanner, regex or intermediate String is
+ * involved for the numeric fields.
+ */
+public class GraphData {
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final String[] names;
+    private final double[] lats;
+    private final double[] lons;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+
+    public GraphData(String[] names, double[] lats, double[] lons,
+                     int[] edgeFrom, int[] edgeTo) {
+        this.names = names;
+        this.lats = lats;
+        this.lons = lons;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+    }
+
+    public int vertexCount() {
+        return lats.length;
+    }
+
+    public int edgeCount() {
+        return edgeFrom.length;
+    }
+
+    public String name(int v) {
+        return names[v];
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    public int edgeFrom(int e) {
+        return edgeFrom[e];
+    }
+
+    public int edgeTo(int e) {
+        return edgeTo[e];
+    }
+
+    /**
+     * Parses a file in the .graph text format from the channel's current
+     * position to its end. Edges may optionally be followed by a single
+     * label token, which is skipped exactly as the Scanner based reader
+     * did.
+     * @param channel an open channel on the .graph file
+     * @return the parsed graph data
+     * @throws IOException if the file cannot be mapped or is not in the
+     * .graph format
+     */
+    public static GraphData parse(FileChannel channel) throws IOException {
+        long start = channel.position();
+        long size = channel.size() - start;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(".graph file too large to map");
+        }
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        return new TextParser(buf).parse();
+    }
+
+    /**
+     * Cursor over the mapped bytes of a .graph file.
+     */
+    private static class TextParser {
+        private final ByteBuffer buf;
+        private final int limit;
+        private int pos;
+
+        TextParser(ByteBuffer buf) {
+            this.buf = buf;
+            this.limit = buf.limit();
+            this.pos = 0;
+        }
+
+        GraphData parse() throws IOException {
+            skipWhitespace();
+            if (!atInt()) {
+                throw new IOException("Could not read .graph file");
+            }
+            int numVert = nextInt();
+            int numEdges = nextInt();
+            if (numVert < 0 || numEdges < 0) {
+                throw malformed();
+            }
+            String[] names = new String[numVert];
+            double[] lats = new double[numVert];
+            double[] lons = new double[numVert];
+            for (int i = 0; i < numVert; i++) {
+                names[i] = nextName();
+                lats[i] = nextDouble();
+                lons[i] = nextDouble();
+            }
+            int[] from = new int[numEdges];
+            int[] to = new int[numEdges];
+            for (int k = 0; k < numEdges; k++) {
+                from[k] = nextVertex(numVert);
+                to[k] = nextVertex(numVert);
+                skipWhitespace();
+                if (pos < limit && !atInt()) {
+                    skipToken();
+                }
+            }
+            return new GraphData(names, lats, lons, from, to);
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t'
+                || b == '\f' || b == 0x0B;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private IOException malformed() {
+            return new IOException("Could not read .graph file: bad token at byte " + pos);
+        }
+
+        private void skipWhitespace() {
+            while (pos < limit && isWhitespace(buf.get(pos))) {
+                pos++;
+            }
+        }
+
+        private void skipToken() {
+            while (pos < limit && !isWhitespace(buf.get(pos))) {
+                pos++;
+            }
+        }
+
+        // true if the token starting at pos is an optionally signed integer
+        private boolean atInt() {
+            int i = pos;
+            if (i < limit && (buf.get(i) == '-' || buf.get(i) == '+')) {
+                i++;
+            }
+            int digitsStart = i;
+            while (i < limit && isDigit(buf.get(i))) {
+                i++;
+            }
+            return i > digitsStart && (i == limit || isWhitespace(buf.get(i)));
+        }
+
+        private String nextName() throws IOException {
+            skipWhitespace();
+            int begin = pos;
+            skipToken();
+            if (pos == begin) {
+                throw malformed();
+            }
+            byte[] bytes = new byte[pos - begin];
+            buf.get(begin, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int nextVertex(int numVert) throws IOException {
+            int v = nextInt();
+            if (v < 0 || v >= numVert) {
+                throw new IOException("Could not read .graph file: vertex index " + v + " out of range");
+            }
+            return v;
+        }
+
+        private int nextInt() throws IOException {
+            skipWhitespace();
+            boolean negative = false;
+            if (pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+                negative = buf.get(pos) == '-';
+                pos++;
+            }
+            int begin = pos;
+            long value = 0;
+            while (pos < limit && isDigit(buf.get(pos))) {
+                value = value * 10 + (buf.get(pos) - '0');
+                if (value > Integer.MAX_VALUE + 1L) {
+                    throw malformed();
+                }
+                pos++;
+            }
+            if (pos == begin || (pos < limit && !isWhitespace(buf.get(pos)))) {
+                throw malformed();
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                throw malformed();
+            }
+            return (int) value;
+        }
+
+        /**
+         * Reads a decimal number. When the digits fit in a double exactly
+         * and the power of ten is small, a single division gives
+         * the correctly rounded result, i.e. the same value as
+         * Double.parseDouble; anything else falls back to parseDouble.
+         */
+        private double nextDouble() throws IOException {
+            skipWhitespace();
+            int begin = pos;
+            boolean negative = false;
+            if (pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+                negative = buf.get(pos) == '-';
+                pos++;
+            }
+            long mantissa = 0;
+            int exponent = 0;
+            int digits = 0;
+            boolean exact = true;
+            while (pos < limit && isDigit(buf.get(pos))) {
+                exact &= accumulate(mantissa);
+                if (exact) {
+                    mantissa = mantissa * 10 + (buf.get(pos) - '0');
+                }
+                digits++;
+                pos++;
+            }
+            if (pos < limit && buf.get(pos) == '.') {
+                pos++;
+                while (pos < limit && isDigit(buf.get(pos))) {
+                    exact &= accumulate(mantissa);
+                    if (exact) {
+                        mantissa = mantissa * 10 + (buf.get(pos) - '0');
+                        exponent--;
+                    }
+                    digits++;
+                    pos++;
+                }
+            }
+            if (pos < limit && !isWhitespace(buf.get(pos))) {
+                // exponent or trailing characters, leave them to parseDouble
+                exact = false;
+            }
+            skipToken();
+            if (digits > 0 && exact && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22) {
+                double value = (double) mantissa / POW10[-exponent];
+                return negative ? -value : value;
+            }
+            return slowDouble(begin);
+        }
+
+        // true if another digit can be appended without leaving the exact range
+        private static boolean accumulate(long mantissa) {
+            return mantissa < MAX_EXACT_MANTISSA / 10;
+        }
+
+        private double slowDouble(int begin) throws IOException {
+            byte[] bytes = new byte[pos - begin];
+            buf.get(begin, bytes);
+            try {
+                return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                pos = begin;
+                throw malformed();
+            }
+        }
+    }
+}
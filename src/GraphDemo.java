@@ -36,11 +36,34 @@ public class GraphDemo {
         }
     }
 
+    /**
+     * Routes from Miami through San Diego to Seattle in one call,
+     * the two legs computed concurrently, and draws the whole route
+     * @param gp
+     * @param viz
+     */
     public void segmented(GraphProcessor gp, Visualize viz){
         String start = "Miami FL";
         String inter = "San Diego CA";
         String end = "Seattle WA";
-        // no code here
+
+        List<Point> waypoints = new ArrayList<>();
+        for (String city : new String[] {start, inter, end}) {
+            if (! myMap.containsKey(city)){
+                System.out.printf("couldn't find %s in graph\n",city);
+                return;
+            }
+            waypoints.add(myMap.get(city));
+        }
+        long before = System.nanoTime();
+        List<Point> path = gp.route(waypoints);
+        long elapsed = System.nanoTime() - before;
+        double dist = gp.routeDistance(path);
+        System.out.printf("route %s -> %s -> %s\n",start,inter,end);
+        System.out.printf("short path has %d points\n",path.size());
+        System.out.printf("short path is %2.3f in length\n",dist);
+        System.out.printf("found in %2.3f ms\n",elapsed / 1e6);
+        viz.drawRoute(path);
     }
 
     /**
@@ -1,16 +1,27 @@
 import java.security.InvalidAlgorithmParameterException;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Models a weighted graph of latitude-longitude points
  * and supports various distance and routing operations.
+ * The loaded graph and its preprocessing live in an immutable
+ * GraphSnapshot that is replaced, never modified, so one processor can
+ * serve queries from any number of threads. Each query reads the
+ * snapshot once, and its search workspace belongs to the calling thread.
  * To do: Add your name(s) as additional authors
  * @author Brandon Fain
  * @author Owen Astrachan modified in Fall 2023
  *
  */
 public class GraphProcessor {
+    // pairs per task in routeAll, enough to outweigh scheduling
+    private static final int BATCH_CHUNK = 16;
     /**
      * Creates and initializes a graph from a source data
      * file in the .graph format. Should be called
@@ -19,58 +30,165 @@ public class GraphProcessor {
      * @throws Exception if file not found or error reading
      */
 
-    private Map <Point, Set<Point>> myGraph;
-    private Map<String, Point> pointName;
-    private int numVert;
-    private int numEdges;
+    // volatile publishes each new snapshot fully built to query threads
+    private volatile GraphSnapshot mySnapshot;
+    // each thread reuses one search workspace while the graph stays the same
+    private final ThreadLocal<RouteSearch> mySearch = new ThreadLocal<>();
+    private final ThreadLocal<int[]> myLastSettled = ThreadLocal.withInitial(() -> new int[1]);
+    // shared by all threads; null when routes are not cached
+    private volatile RouteCache myRouteCache;
 
 
  
 
 
     public GraphProcessor(){
-        myGraph = new HashMap<>();
-        pointName = new HashMap<>();
-        numVert = 0;
-        numEdges = 0;
+        mySnapshot = null;
     }
 
     /**
      * Creates and initializes a graph from a source data
-     * file in the .graph format. Should be called
-     * before any other methods work.
+     * file in the .graph format, or in the binary format written
+     * by BinaryGraphFormat. Should be called
+     * before any other methods work. Queries already running finish on
+     * the previous graph.
      * @param file a FileInputStream of the .graph file
      * @throws IOException if file not found or error reading
      */
-    public void initialize(FileInputStream file) throws IOException {
-        Scanner scan = new Scanner(file);
-        if(!scan.hasNextInt()){
-            scan.close();
-            throw new IOException("Could not read .graph file");
-        }
-        numVert = scan.nextInt();
-        numEdges = scan.nextInt();
-        Point[] points = new Point[numVert];
-        for (int i = 0; i < numVert; i++) {
-            String name = scan.next();
-            double lat = scan.nextDouble();
-            double lon = scan.nextDouble();
-            Point p = new Point(lat, lon);
-            points[i] = p;
-            pointName.put(name, p);
-        }
-        for (int k = 0; k < numEdges; k++) {
-            Point p1 = points[scan.nextInt()];
-            Point p2 = points[scan.nextInt()];
-            myGraph.putIfAbsent(p1, new HashSet<Point>());
-            myGraph.putIfAbsent(p2, new HashSet<Point>());
-            myGraph.get(p1).add(p2);
-            myGraph.get(p2).add(p1);
-            if (!scan.hasNextInt() && scan.hasNext()) {
-                scan.next();
+    public synchronized void initialize(FileInputStream file) throws IOException {
+        GraphData data;
+        try (FileChannel channel = file.getChannel()) {
+            if (BinaryGraphFormat.isBinary(channel)) {
+                data = BinaryGraphFormat.read(channel);
+            } else {
+                data = GraphData.parse(channel);
             }
         }
-        scan.close();
+        mySnapshot = new GraphSnapshot(data);
+    }
+
+    /**
+     * @return the graph and preprocessing that queries currently use,
+     * or null before initialize
+     */
+    public GraphSnapshot snapshot() {
+        return mySnapshot;
+    }
+
+    /**
+     * Preprocesses the graph into a Contraction Hierarchy so that
+     * route(start, end, RouteAlgorithm.CH) can answer queries by
+     * searching only a small upward part of the graph. Must be called
+     * again after initialize loads a new graph.
+     * @return the hierarchy, for its shortcut count and build time
+     */
+    public synchronized ContractionHierarchy buildContractionHierarchy() {
+        ContractionHierarchy ch = new ContractionHierarchy(mySnapshot.graph());
+        mySnapshot = mySnapshot.withHierarchy(ch);
+        return ch;
+    }
+
+    /**
+     * Like buildContractionHierarchy(), but contracts independent
+     * vertices concurrently on the given number of threads. The result
+     * does not depend on the thread count.
+     * @param threads the number of worker threads
+     * @return the hierarchy now used by route
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public synchronized ContractionHierarchy buildContractionHierarchy(int threads) {
+        ContractionHierarchy ch = new ContractionHierarchy(mySnapshot.graph(), threads);
+        mySnapshot = mySnapshot.withHierarchy(ch);
+        return ch;
+    }
+
+    /**
+     * Selects landmarks and computes their distance tables so that
+     * route(start, end, RouteAlgorithm.ALT) can use them as its A*
+     * heuristic. Much cheaper to rebuild than a Contraction Hierarchy.
+     * Must be called again after initialize loads a new graph.
+     * @param count how many landmarks to place
+     * @param selection how to place them
+     * @return the landmarks, for their build time
+     * @throws IllegalArgumentException if count is not positive
+     */
+    public synchronized Landmarks buildLandmarks(int count, Landmarks.Selection selection) {
+        Landmarks landmarks = new Landmarks(mySnapshot.graph(), count, selection);
+        mySnapshot = mySnapshot.withLandmarks(landmarks);
+        return landmarks;
+    }
+
+    /**
+     * Derives hub labels from the Contraction Hierarchy, building the
+     * hierarchy first if needed, so that shortestDistance answers by
+     * merging two labels and route(start, end, RouteAlgorithm.HUB_LABELS)
+     * can walk a shortest path without a search. Must be called again
+     * after initialize loads a new graph.
+     * @return the labels, for their size, memory and build time
+     */
+    public synchronized HubLabels buildHubLabels() {
+        ContractionHierarchy ch = mySnapshot.hierarchy();
+        if (ch == null) {
+            ch = buildContractionHierarchy();
+        }
+        HubLabels labels = new HubLabels(ch);
+        mySnapshot = mySnapshot.withHubLabels(labels);
+        return labels;
+    }
+
+    /**
+     * Rounds every edge length to a whole number of units so that
+     * route(start, end, RouteAlgorithm.BUCKET) can run Dijkstra's
+     * algorithm with a bucket queue. Must be called again after
+     * initialize loads a new graph.
+     * @param resolution miles per unit, such as 0.01
+     * @return the rounded lengths, for their error bound
+     * @throws IllegalArgumentException if resolution is not positive, or
+     * finer than IntegerWeights allows for the longest edge
+     */
+    public synchronized IntegerWeights buildIntegerWeights(double resolution) {
+        IntegerWeights weights = new IntegerWeights(mySnapshot.graph(), resolution);
+        mySnapshot = mySnapshot.withIntegerWeights(weights);
+        return weights;
+    }
+
+    /**
+     * Puts a least-recently-used cache in front of route, so repeated
+     * queries between the same two vertices, in either direction and with
+     * the same algorithm, skip the search. Replaces any earlier cache.
+     * The cache drops its routes when initialize loads a new graph or a
+     * build method adds or replaces preprocessing.
+     * @param maxRoutes the most routes to keep
+     * @param maxBytes the most estimated heap bytes the routes may take
+     * @return the cache, for its hit, miss and eviction counters
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public RouteCache enableRouteCache(int maxRoutes, long maxBytes) {
+        RouteCache cache = new RouteCache(maxRoutes, maxBytes);
+        myRouteCache = cache;
+        return cache;
+    }
+
+    /**
+     * Stops caching routes and drops the cache.
+     */
+    public void disableRouteCache() {
+        myRouteCache = null;
+    }
+
+    /**
+     * @return the cache in front of route, or null if routes are not cached
+     */
+    public RouteCache routeCache() {
+        return myRouteCache;
+    }
+
+    /**
+     * @return true if buildContractionHierarchy has been called for
+     * the current graph
+     */
+    public boolean hasContractionHierarchy() {
+        return mySnapshot.hierarchy() != null;
     }
 
 
@@ -99,19 +217,106 @@ public class GraphProcessor {
      * @return The closest point in the graph to p
      */
     public Point nearestPoint(Point p) {
-        Point closest = null;
-        double minDist = Double.MAX_VALUE;
-        for (Point point : myGraph.keySet()){
-            double dist = point.distance(p);
-            if (dist < minDist){
-                minDist = dist;
-                closest = point;
-            }
+        GraphSnapshot snapshot = mySnapshot;
+        int closest = snapshot.index().nearest(p);
+        return closest < 0 ? null : snapshot.graph().point(closest);
+    }
+
+
+
+    /**
+     * Returns the id of the connected component containing p. Two
+     * points are connected exactly when their component ids are equal.
+     * @param p a point in the graph
+     * @return the component id, or -1 if p is not in the graph
+     */
+    public int componentOf(Point p) {
+        RoadGraph graph = mySnapshot.graph();
+        int v = graph.vertexId(p);
+        return v < 0 ? -1 : graph.component(v);
+    }
+
+    /**
+     * Searches for the point closest in straight-line distance to p
+     * among the points of one connected component
+     * @param p is a point, not necessarily in the graph
+     * @param component a component id as returned by componentOf
+     * @return The closest point to p in the component
+     * @throws IllegalArgumentException if there is no such component
+     */
+    public Point nearestPoint(Point p, int component) {
+        GraphSnapshot snapshot = mySnapshot;
+        return snapshot.graph().point(snapshot.components().nearest(p, component));
+    }
+
+    /**
+     * Searches for the point closest in straight-line distance to p
+     * among the points connected to anchor, so that a route between
+     * anchor and the result always exists
+     * @param p is a point, not necessarily in the graph
+     * @param anchor a point in the graph
+     * @return The closest point to p that is connected to anchor
+     * @throws IllegalArgumentException if anchor is not in the graph
+     */
+    public Point nearestConnectedPoint(Point p, Point anchor) {
+        GraphSnapshot snapshot = mySnapshot;
+        RoadGraph graph = snapshot.graph();
+        int v = graph.vertexId(anchor);
+        if (v < 0) {
+            throw new IllegalArgumentException(anchor + " is not in the graph");
         }
-        return closest;
+        return graph.point(snapshot.components().nearest(p, graph.component(v)));
+    }
+
+    /**
+     * Searches for the k points in the graph that are closest in
+     * straight-line distance to p, so a caller can fall back to the
+     * next candidate when the closest one is not usable
+     * @param p is a point, not necessarily in the graph
+     * @param k how many points to return
+     * @return up to k points, closest first; the first is nearestPoint(p)
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<Point> nearestPoints(Point p, int k) {
+        GraphSnapshot snapshot = mySnapshot;
+        return toPoints(snapshot.graph(), snapshot.index().nearest(p, k));
+    }
+
+    /**
+     * Finds every point in the graph within the given straight-line
+     * distance of p
+     * @param p is a point, not necessarily in the graph
+     * @param miles the radius around p, inclusive
+     * @return the points within miles of p, in no particular order
+     */
+    public List<Point> pointsWithin(Point p, double miles) {
+        GraphSnapshot snapshot = mySnapshot;
+        return toPoints(snapshot.graph(), snapshot.grid().within(p, miles));
     }
 
+    /**
+     * Finds every point in the graph inside the latitude-longitude box
+     * spanned by two opposite corners, boundary included
+     * @param corner one corner of the box
+     * @param opposite the diagonally opposite corner
+     * @return the points inside the box, in no particular order
+     */
+    public List<Point> pointsInBox(Point corner, Point opposite) {
+        GraphSnapshot snapshot = mySnapshot;
+        return toPoints(snapshot.graph(),
+                        snapshot.grid().inBox(Math.min(corner.getLat(), opposite.getLat()),
+                                              Math.min(corner.getLon(), opposite.getLon()),
+                                              Math.max(corner.getLat(), opposite.getLat()),
+                                              Math.max(corner.getLon(), opposite.getLon())));
+    }
 
+    private static List<Point> toPoints(RoadGraph graph, int[] vertices) {
+        List<Point> points = new ArrayList<>(vertices.length);
+        for (int v : vertices) {
+            points.add(graph.point(v));
+        }
+        return points;
+    }
 
     /**
      * Calculates the total distance along the route, summing
@@ -131,6 +336,105 @@ public class GraphProcessor {
     }
     
 
+    /**
+     * Finds the length of the shortest route from start to end without
+     * building the route, from the hub labels when buildHubLabels has
+     * been called and with Dijkstra's algorithm otherwise.
+     * @param start Beginning point.
+     * @param end Destination point.
+     * @return the distance in miles, 0 if start equals end and infinite
+     * if start is not connected to end
+     * @throws IllegalArgumentException if start or end is not in the graph
+     */
+    public double shortestDistance(Point start, Point end) {
+        GraphSnapshot snapshot = mySnapshot;
+        RoadGraph graph = snapshot.graph();
+        int source = graph.vertexId(start);
+        int target = graph.vertexId(end);
+        if (source < 0 || target < 0) {
+            throw new IllegalArgumentException("Point not in graph");
+        }
+        if (snapshot.hubLabels() != null) {
+            return snapshot.hubLabels().distance(source, target);
+        }
+        if (source == target) {
+            return 0.0;
+        }
+        if (graph.component(source) != graph.component(target)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        RouteSearch search = search(graph);
+        search.dijkstra(source, target);
+        return search.distance(target);
+    }
+
+    /**
+     * Finds the length of the shortest route from every source to every
+     * target, with one search per source, or with bucket-based searches
+     * on the Contraction Hierarchy when buildContractionHierarchy has
+     * been called. Much faster than route and routeDistance per pair.
+     * @param sources points of the graph
+     * @param targets points of the graph
+     * @return distances[i][j] in miles from sources.get(i) to
+     * targets.get(j), 0 where they are equal and infinite where they are
+     * not connected
+     * @throws IllegalArgumentException if a point is not in the graph
+     */
+    public double[][] distanceMatrix(List<Point> sources, List<Point> targets) {
+        GraphSnapshot snapshot = mySnapshot;
+        int[] sourceIds = vertexIds(snapshot.graph(), sources);
+        int[] targetIds = vertexIds(snapshot.graph(), targets);
+        return distanceMatrix(snapshot, sourceIds, targetIds);
+    }
+
+    private double[][] distanceMatrix(GraphSnapshot snapshot, int[] sourceIds, int[] targetIds) {
+        if (snapshot.hierarchy() != null) {
+            return DistanceMatrix.compute(snapshot.hierarchy(), search(snapshot.graph()), sourceIds, targetIds);
+        }
+        return DistanceMatrix.compute(search(snapshot.graph()), sourceIds, targetIds);
+    }
+
+    private static int[] vertexIds(RoadGraph graph, List<Point> points) {
+        int[] ids = new int[points.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = graph.vertexId(points.get(i));
+            if (ids[i] < 0) {
+                throw new IllegalArgumentException("Point not in graph: " + points.get(i));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Finds every point whose shortest road distance from origin is at
+     * most miles, with Dijkstra's algorithm stopped at that distance. The
+     * search touches only the points it reaches and their neighbors, so
+     * its cost grows with the area reached rather than with the graph.
+     * @param origin a point in the graph
+     * @param miles the road distance budget, inclusive
+     * @return the reached vertex ids and distances, origin first, with
+     * their outline available for drawing with Visualize.drawPolygon
+     * @throws IllegalArgumentException if origin is not in the graph or
+     * miles is negative or not a number
+     */
+    public Reachable reachableWithin(Point origin, double miles) {
+        if (!(miles >= 0)) {
+            throw new IllegalArgumentException("miles must not be negative: " + miles);
+        }
+        RoadGraph graph = mySnapshot.graph();
+        int source = graph.vertexId(origin);
+        if (source < 0) {
+            throw new IllegalArgumentException("Point not in graph");
+        }
+        RouteSearch search = search(graph);
+        int[] vertices = search.within(source, miles);
+        double[] distances = new double[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            distances[i] = search.distance(vertices[i]);
+        }
+        return new Reachable(graph, vertices, distances);
+    }
+
     /**
      * Checks if input points are part of a connected component
      * in the graph, that is, can one get from one to the other
@@ -143,22 +447,11 @@ public class GraphProcessor {
         if (p1.equals(p2)){
             return true;
         }
-        Set<Point> visited = new HashSet<>();
-        Queue<Point> queue = new LinkedList<>();
-        queue.add(p1);
-        while(!queue.isEmpty()){
-            Point current = queue.remove();
-            if(current.equals(p2)){
-                return true;
-            }
-            if(!visited.contains(current)){
-                visited.add(current);
-                for(Point point : myGraph.get(current)){
-                    queue.add(point);
-                }
-            }
-        }
-        return false;
+        RoadGraph graph = mySnapshot.graph();
+        int source = graph.vertexId(p1);
+        int target = graph.vertexId(p2);
+        return source >= 0 && target >= 0
+            && graph.component(source) == graph.component(target);
     }
 
     /**
@@ -174,44 +467,313 @@ public class GraphProcessor {
      * either because start is not connected to end or because start equals end.
      */
     public List<Point> route(Point start, Point end) throws IllegalArgumentException {
-        Map<Point, Double> distanceMap = new HashMap<>();
-        Map<Point, Point> prev = new HashMap<>();
-        Set<Point> visited = new HashSet<>();
-        prev.put(start, null);
-    
-        PriorityQueue<Point> queue = new PriorityQueue<Point>(Comparator.comparingDouble(distanceMap ::get));
-        Point current = start;
-        distanceMap.put(start, 0.0);
-        queue.add(current);
-        while (queue.size() > 0) {
-            current = queue.remove();
-            if (current.equals(end)){
+        return route(start, end, RouteAlgorithm.DIJKSTRA);
+    }
+
+    /**
+     * Returns the shortest path from start to end exactly as
+     * route(start, end) does, found with the given search algorithm,
+     * or taken from the route cache if enableRouteCache was called.
+     * A cached route is the earlier answer for the same algorithm
+     * and pair, reversed if it was asked the other way round.
+     * BUCKET is the exception: its route is shortest under rounded edge
+     * lengths and may be slightly longer, by at most
+     * IntegerWeights.errorBound.
+     * @param start Beginning point.
+     * @param end Destination point.
+     * @param algorithm the search to run
+     * @return The shortest path [start, ..., end].
+     * @throws IllegalArgumentException if there is no such route, 
+     * either because start is not connected to end or because start equals end.
+     * @throws IllegalStateException if the algorithm needs preprocessing
+     * that has not been done
+     */
+    public List<Point> route(Point start, Point end, RouteAlgorithm algorithm) throws IllegalArgumentException {
+        return route(mySnapshot, start, end, algorithm);
+    }
+
+    private List<Point> route(GraphSnapshot snapshot, Point start, Point end, RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.graph();
+        int source = graph.vertexId(start);
+        int target = graph.vertexId(end);
+        if (source < 0 || target < 0 || source == target
+            || graph.component(source) != graph.component(target)) {
+            throw new IllegalArgumentException("No route found");
+        }
+        RouteCache cache = myRouteCache;
+        if (cache == null) {
+            return findRoute(snapshot, source, target, algorithm);
+        }
+        List<Point> path = cache.get(snapshot, algorithm, source, target);
+        if (path != null) {
+            myLastSettled.get()[0] = 0;
+            return path;
+        }
+        path = findRoute(snapshot, source, target, algorithm);
+        cache.put(snapshot, algorithm, source, target, path);
+        return path;
+    }
+
+    private List<Point> findRoute(GraphSnapshot snapshot, int source, int target, RouteAlgorithm algorithm) {
+        RoadGraph graph = snapshot.graph();
+        RouteSearch search = search(graph);
+        boolean found;
+        switch (algorithm) {
+            case DIJKSTRA:
+                found = search.dijkstra(source, target);
                 break;
+            case ASTAR:
+                found = search.astar(source, target);
+                break;
+            case BIDIRECTIONAL:
+                found = search.bidirectional(source, target);
+                break;
+            case CH:
+                if (snapshot.hierarchy() == null) {
+                    throw new IllegalStateException("buildContractionHierarchy has not been called");
+                }
+                found = search.hierarchy(snapshot.hierarchy(), source, target);
+                break;
+            case ALT:
+                if (snapshot.landmarks() == null) {
+                    throw new IllegalStateException("buildLandmarks has not been called");
+                }
+                found = search.alt(snapshot.landmarks(), source, target);
+                break;
+            case BUCKET:
+                if (snapshot.integerWeights() == null) {
+                    throw new IllegalStateException("buildIntegerWeights has not been called");
+                }
+                found = search.buckets(snapshot.integerWeights(), source, target);
+                break;
+            case HUB_LABELS:
+                if (snapshot.hubLabels() == null) {
+                    throw new IllegalStateException("buildHubLabels has not been called");
+                }
+                myLastSettled.get()[0] = 0;
+                return toPoints(graph, snapshot.hubLabels().path(source, target));
+            default:
+                throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+        }
+        myLastSettled.get()[0] = search.settledCount();
+        if (!found) {
+            throw new IllegalArgumentException("No route found");
+        }
+        return search.path(target);
+    }
+
+    /**
+     * Routes every pair with Dijkstra's algorithm on the common
+     * ForkJoinPool, as routeAll(pairs, RouteAlgorithm.DIJKSTRA,
+     * ForkJoinPool.commonPool()) does.
+     */
+    public List<List<Point>> routeAll(List<Point[]> pairs) {
+        return routeAll(pairs, RouteAlgorithm.DIJKSTRA, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Routes many pairs concurrently. Pairs are split into small chunks
+     * that run as separate tasks on the executor. Each worker thread
+     * reuses its own search workspace over the shared read-only graph,
+     * so throughput grows with the threads the executor provides. Any
+     * Executor works: a fixed pool of platform threads, or on newer
+     * Java versions a virtual thread per task executor.
+     * @param pairs start and end points, each an array of length 2
+     * @param algorithm the search to run for every pair
+     * @param executor runs the routing tasks
+     * @return the routes in the order of pairs, with null for a pair that
+     * route would reject with IllegalArgumentException
+     * @throws IllegalArgumentException if an element is not a pair
+     * @throws IllegalStateException if the algorithm needs preprocessing
+     * that has not been done
+     */
+    public List<List<Point>> routeAll(List<Point[]> pairs, RouteAlgorithm algorithm, Executor executor) {
+        for (Point[] pair : pairs) {
+            if (pair == null || pair.length != 2) {
+                throw new IllegalArgumentException("Each element of pairs must hold a start and an end");
             }
-            visited.add(current);
-            for(Point p : myGraph.get(current)) {
-                if (visited.contains(p)) continue;
-                double weight = current.distance(p);
-                double newDist = distanceMap.get(current) + weight;
-                if (!distanceMap.containsKey(p) || newDist < distanceMap.get(p)) {
-                    distanceMap.put(p, newDist);
-                    prev.put(p, current);
-                    queue.add(p);
+        }
+        // every pair is routed on the same graph, even if initialize runs meanwhile
+        GraphSnapshot snapshot = mySnapshot;
+        // tasks set distinct slots, and join makes their writes visible
+        List<List<Point>> routes = new ArrayList<>(Collections.nCopies(pairs.size(), null));
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < pairs.size(); from += BATCH_CHUNK) {
+            int start = from;
+            int end = Math.min(from + BATCH_CHUNK, pairs.size());
+            tasks.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    Point[] pair = pairs.get(i);
+                    try {
+                        routes.set(i, route(snapshot, pair[0], pair[1], algorithm));
+                    } catch (IllegalArgumentException e) {
+                        // no route; the slot stays null
+                    }
                 }
+            }, executor));
+        }
+        join(CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])));
+        return routes;
+    }
+
+    /**
+     * Routes through every waypoint in order with Dijkstra's algorithm,
+     * as route(waypoints, RouteAlgorithm.DIJKSTRA) does.
+     */
+    public List<Point> route(List<Point> waypoints) {
+        return route(waypoints, RouteAlgorithm.DIJKSTRA);
+    }
+
+    /**
+     * Returns a shortest path that visits the waypoints in order. Each
+     * waypoint is first snapped to its nearest point in the graph, all
+     * of them against the same graph, so waypoints need not be in the
+     * graph. The legs between consecutive waypoints do not depend on each
+     * other and are routed concurrently on the common ForkJoinPool, each
+     * worker reusing its own search workspace. A junction appears once,
+     * ending one leg and starting the next. Consecutive waypoints that
+     * snap to the same point add no leg.
+     * @param waypoints the points to visit, at least two
+     * @param algorithm the search to run for every leg
+     * @return the path [first, ..., last] in the graph
+     * @throws IllegalArgumentException if there are fewer than two
+     * waypoints, if they all snap to one point, or if a leg has no route
+     * because its ends are not connected
+     * @throws IllegalStateException if the algorithm needs preprocessing
+     * that has not been done
+     */
+    public List<Point> route(List<Point> waypoints, RouteAlgorithm algorithm) {
+        return route(mySnapshot, waypoints, algorithm);
+    }
+
+    private List<Point> route(GraphSnapshot snapshot, List<Point> waypoints, RouteAlgorithm algorithm) {
+        if (waypoints.size() < 2) {
+            throw new IllegalArgumentException("Need at least two waypoints");
+        }
+        List<Point> stops = new ArrayList<>(waypoints.size());
+        for (Point p : waypoints) {
+            Point snapped = snapshot.graph().point(snap(snapshot, p));
+            if (stops.isEmpty() || !stops.get(stops.size() - 1).equals(snapped)) {
+                stops.add(snapped);
             }
         }
-        if (!prev.containsKey(end) || prev.get(end) == null) {
+        if (stops.size() < 2) {
             throw new IllegalArgumentException("No route found");
         }
-        List<Point> path = new ArrayList<>();
-        current = end;
-        while (current != null){
-            path.add(current);
-            current = prev.get(current);
-        } 
-        Collections.reverse(path);
+        List<CompletableFuture<List<Point>>> legs = new ArrayList<>();
+        // each leg records its pool thread's settled count, and join
+        // makes the write visible here
+        int[] settled = new int[stops.size() - 1];
+        for (int i = 1; i < stops.size(); i++) {
+            Point from = stops.get(i - 1);
+            Point to = stops.get(i);
+            int leg = i - 1;
+            legs.add(CompletableFuture.supplyAsync(() -> {
+                List<Point> route = route(snapshot, from, to, algorithm);
+                settled[leg] = myLastSettled.get()[0];
+                return route;
+            }));
+        }
+        List<Point> path = new ArrayList<>(join(legs.get(0)));
+        for (int i = 1; i < legs.size(); i++) {
+            List<Point> leg = join(legs.get(i));
+            path.addAll(leg.subList(1, leg.size()));
+        }
+        int total = 0;
+        for (int count : settled) {
+            total += count;
+        }
+        myLastSettled.get()[0] = total;
         return path;
     }
+
+    // the id of the vertex nearest p
+    private static int snap(GraphSnapshot snapshot, Point p) {
+        int v = snapshot.index().nearest(p);
+        if (v < 0) {
+            throw new IllegalArgumentException("No route found");
+        }
+        return v;
+    }
+
+    /**
+     * Orders delivery stops for a short trip from the first stop, then
+     * routes through them. Each stop is snapped to its nearest point in
+     * the graph and the road distances between all of them are computed
+     * as distanceMatrix does, fastest after buildContractionHierarchy.
+     * StopOptimizer then improves a nearest-neighbor order with 2-opt and
+     * Or-opt moves until budgetMillis runs out or it finds nothing
+     * better. Finally the stops are routed in that order as
+     * route(waypoints) does, with CH when a hierarchy has been built.
+     * @param stops the stops, the first being where the trip starts
+     * @param roundTrip true if the trip ends back at the first stop
+     * @param budgetMillis how long the ordering may search, not counting
+     * the distances and the final route
+     * @return the stops in order and the route through them
+     * @throws IllegalArgumentException if there are fewer than two stops,
+     * if they all snap to one point, or if one is not connected to the
+     * first
+     */
+    public StopSequence optimizeStops(List<Point> stops, boolean roundTrip, long budgetMillis) {
+        if (stops.size() < 2) {
+            throw new IllegalArgumentException("Need at least two stops");
+        }
+        GraphSnapshot snapshot = mySnapshot;
+        RoadGraph graph = snapshot.graph();
+        int[] ids = new int[stops.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = snap(snapshot, stops.get(i));
+            if (graph.component(ids[i]) != graph.component(ids[0])) {
+                throw new IllegalArgumentException("No route found to " + stops.get(i));
+            }
+        }
+        int[] order = new StopOptimizer(distanceMatrix(snapshot, ids, ids), roundTrip).order(budgetMillis);
+        List<Point> ordered = new ArrayList<>(order.length);
+        List<Point> waypoints = new ArrayList<>(order.length + 1);
+        for (int i : order) {
+            ordered.add(stops.get(i));
+            waypoints.add(graph.point(ids[i]));
+        }
+        if (roundTrip) {
+            waypoints.add(graph.point(ids[0]));
+        }
+        RouteAlgorithm algorithm = snapshot.hierarchy() != null ? RouteAlgorithm.CH : RouteAlgorithm.DIJKSTRA;
+        List<Point> route = route(snapshot, waypoints, algorithm);
+        return new StopSequence(order, ordered, route, routeDistance(route));
+    }
+
+    // waits for task, rethrowing what it threw
+    private static <T> T join(CompletableFuture<T> task) {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private RouteSearch search(RoadGraph graph) {
+        RouteSearch search = mySearch.get();
+        if (search == null || search.graph() != graph) {
+            search = new RouteSearch(graph);
+            mySearch.set(search);
+        }
+        return search;
+    }
+
+    /**
+     * Reports how many vertices the most recent route call of the
+     * calling thread settled, for comparing how much of the graph each
+     * algorithm explores
+     * @return the settled vertex count of the last route search, 0 if
+     * it was answered by hub labels or from the route cache, and the
+     * total over all legs after routing through waypoints
+     */
+    public int lastSettledCount() {
+        return myLastSettled.get()[0];
+    }
     
     public static void main(String[] args) throws FileNotFoundException, IOException {
         String name = "data/usa.graph";
@@ -0,0 +1,135 @@
+/**
+ * An immutable view of one loaded graph: the RoadGraph, its spatial
+ * indexes and whatever preprocessing has been built for it. Every field
+ * is final and every structure it refers to is read-only after
+ * construction, so once a snapshot is published any number of threads
+ * can query it without locking. Queries keep their own state, such as a
+ * RouteSearch workspace, outside the snapshot.
+ * <p>
+ * Adding preprocessing does not change a snapshot; the with methods
+ * return a new one that shares the graph and everything already built.
+ * A query that reads a snapshot once therefore sees one consistent set
+ * of structures even while another thread builds more.
+ */
+public final class GraphSnapshot {
+    private final RoadGraph graph;
+    private final KdTree index;
+    private final GridIndex grid;
+    private final ComponentIndex components;
+    private final ContractionHierarchy hierarchy;
+    private final Landmarks landmarks;
+    private final HubLabels hubLabels;
+    private final IntegerWeights integerWeights;
+
+    /**
+     * Builds the graph and its spatial indexes, with no preprocessing.
+     * @param data the parsed graph file
+     */
+    public GraphSnapshot(GraphData data) {
+        graph = new RoadGraph(data);
+        index = new KdTree(graph);
+        grid = new GridIndex(graph);
+        components = new ComponentIndex(graph);
+        hierarchy = null;
+        landmarks = null;
+        hubLabels = null;
+        integerWeights = null;
+    }
+
+    private GraphSnapshot(GraphSnapshot base, ContractionHierarchy hierarchy, Landmarks landmarks,
+                          HubLabels hubLabels, IntegerWeights integerWeights) {
+        graph = base.graph;
+        index = base.index;
+        grid = base.grid;
+        components = base.components;
+        this.hierarchy = hierarchy;
+        this.landmarks = landmarks;
+        this.hubLabels = hubLabels;
+        this.integerWeights = integerWeights;
+    }
+
+    /**
+     * @return a copy of this snapshot that also holds hierarchy
+     * @throws IllegalArgumentException if hierarchy is of another graph
+     */
+    public GraphSnapshot withHierarchy(ContractionHierarchy hierarchy) {
+        checkGraph(hierarchy.graph());
+        return new GraphSnapshot(this, hierarchy, landmarks, hubLabels, integerWeights);
+    }
+
+    /**
+     * @return a copy of this snapshot that also holds landmarks
+     * @throws IllegalArgumentException if landmarks are of another graph
+     */
+    public GraphSnapshot withLandmarks(Landmarks landmarks) {
+        checkGraph(landmarks.graph());
+        return new GraphSnapshot(this, hierarchy, landmarks, hubLabels, integerWeights);
+    }
+
+    /**
+     * @return a copy of this snapshot that also holds hubLabels
+     * @throws IllegalArgumentException if the labels are of another graph
+     */
+    public GraphSnapshot withHubLabels(HubLabels hubLabels) {
+        checkGraph(hubLabels.graph());
+        return new GraphSnapshot(this, hierarchy, landmarks, hubLabels, integerWeights);
+    }
+
+    /**
+     * @return a copy of this snapshot that also holds integerWeights,
+     * which must have been rounded from graph()
+     */
+    public GraphSnapshot withIntegerWeights(IntegerWeights integerWeights) {
+        return new GraphSnapshot(this, hierarchy, landmarks, hubLabels, integerWeights);
+    }
+
+    private void checkGraph(RoadGraph other) {
+        if (other != graph) {
+            throw new IllegalArgumentException("built for a different graph");
+        }
+    }
+
+    public RoadGraph graph() {
+        return graph;
+    }
+
+    public KdTree index() {
+        return index;
+    }
+
+    public GridIndex grid() {
+        return grid;
+    }
+
+    public ComponentIndex components() {
+        return components;
+    }
+
+    /**
+     * @return the Contraction Hierarchy, or null if none was built
+     */
+    public ContractionHierarchy hierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * @return the landmarks, or null if none were built
+     */
+    public Landmarks landmarks() {
+        return landmarks;
+    }
+
+    /**
+     * @return the hub labels, or null if none were built
+     */
+    public HubLabels hubLabels() {
+        return hubLabels;
+    }
+
+    /**
+     * @return the rounded edge lengths, or null if none were built
+     */
+    public IntegerWeights integerWeights() {
+        return integerWeights;
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * Uniform latitude/longitude grid over the vertices of a RoadGraph, for
+ * radius and bounding-box queries that only look at nearby cells. Cells
+ * are sized so that on average a few vertices share a cell, and the
+ * buckets are stored compactly: the vertices of cell c are
+ * items[cellStart[c]] up to items[cellStart[c + 1]], in ascending id
+ * order.
+ */
+public class GridIndex {
+    private static final int TARGET_PER_CELL = 4;
+    private static final double SLACK = 1e-9;
+
+    private final RoadGraph graph;
+    private final double originLat;
+    private final double originLon;
+    private final double cellSize;
+    private final int rows;
+    private final int cols;
+    private final int[] cellStart;
+    private final int[] items;
+
+    /**
+     * Buckets every vertex of the graph into grid cells.
+     */
+    public GridIndex(RoadGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        double latLo = Double.POSITIVE_INFINITY, latHi = Double.NEGATIVE_INFINITY;
+        double lonLo = Double.POSITIVE_INFINITY, lonHi = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            latLo = Math.min(latLo, graph.lat(v));
+            latHi = Math.max(latHi, graph.lat(v));
+            lonLo = Math.min(lonLo, graph.lon(v));
+            lonHi = Math.max(lonHi, graph.lon(v));
+        }
+        if (n == 0) {
+            latLo = latHi = lonLo = lonHi = 0;
+        }
+        double latSpan = Math.max(latHi - latLo, 1e-6);
+        double lonSpan = Math.max(lonHi - lonLo, 1e-6);
+        int cells = Math.max(1, n / TARGET_PER_CELL);
+        originLat = latLo;
+        originLon = lonLo;
+        cellSize = Math.sqrt(latSpan * lonSpan / cells);
+        rows = (int) Math.min(cells, Math.floor(latSpan / cellSize) + 1);
+        cols = (int) Math.min(cells, Math.floor(lonSpan / cellSize) + 1);
+
+        cellStart = new int[rows * cols + 1];
+        int[] cellOf = new int[n];
+        for (int v = 0; v < n; v++) {
+            cellOf[v] = row(graph.lat(v)) * cols + col(graph.lon(v));
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < rows * cols; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = Arrays.copyOf(cellStart, rows * cols);
+        items = new int[n];
+        for (int v = 0; v < n; v++) {
+            items[fill[cellOf[v]]++] = v;
+        }
+    }
+
+    // casting saturates, so infinite bounds clamp to the edge cells
+    private int row(double lat) {
+        return clamp((int) Math.floor((lat - originLat) / cellSize), rows);
+    }
+
+    private int col(double lon) {
+        return clamp((int) Math.floor((lon - originLon) / cellSize), cols);
+    }
+
+    private static int clamp(int index, int count) {
+        return Math.max(0, Math.min(count - 1, index));
+    }
+
+    /**
+     * Finds every vertex whose Point.distance to p is at most miles.
+     * @param p the center, not necessarily in the graph
+     * @param miles the radius
+     * @return the vertex ids in ascending order
+     */
+    public int[] within(Point p, double miles) {
+        if (miles < 0 || graph.size() == 0) {
+            return new int[0];
+        }
+        double lat = p.getLat();
+        double lon = p.getLon();
+        double dLat = Math.toDegrees(miles / RoadGraph.EARTH_RADIUS) * (1 + SLACK);
+        // Point.distance scales longitude by the cosine of the mean
+        // latitude, smallest for the candidate farthest from the equator
+        double farLat = Math.abs(lat) + dLat / 2;
+        double dLon = farLat >= 90 ? Double.POSITIVE_INFINITY
+            : dLat / Math.cos(Math.toRadians(farLat));
+        IntList found = new IntList();
+        scan(lat - dLat, lon - dLon, lat + dLat, lon + dLon, found);
+        int kept = 0;
+        for (int i = 0; i < found.size; i++) {
+            int v = found.items[i];
+            if (graph.point(v).distance(p) <= miles) {
+                found.items[kept++] = v;
+            }
+        }
+        found.size = kept;
+        return found.sorted();
+    }
+
+    /**
+     * Finds every vertex inside the box, edges included.
+     * @return the vertex ids in ascending order
+     */
+    public int[] inBox(double minLat, double minLon, double maxLat, double maxLon) {
+        IntList found = new IntList();
+        if (graph.size() > 0 && minLat <= maxLat && minLon <= maxLon) {
+            scan(minLat, minLon, maxLat, maxLon, found);
+        }
+        return found.sorted();
+    }
+
+    // adds every vertex in the cells overlapping the box and inside it
+    private void scan(double minLat, double minLon, double maxLat, double maxLon, IntList found) {
+        int rowLo = row(minLat);
+        int rowHi = row(maxLat);
+        int colLo = col(minLon);
+        int colHi = col(maxLon);
+        for (int r = rowLo; r <= rowHi; r++) {
+            for (int c = colLo; c <= colHi; c++) {
+                int cell = r * cols + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int v = items[i];
+                    double lat = graph.lat(v);
+                    double lon = graph.lon(v);
+                    if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+                        found.add(v);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable int array for query results.
+     */
+    private static class IntList {
+        int[] items = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        int[] sorted() {
+            int[] result = Arrays.copyOf(items, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
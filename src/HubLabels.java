@@ -0,0 +1,212 @@
+import java.util.Arrays;
+
+/**
+ * Hub labeling distance oracle. Every vertex v gets a label: a list of
+ * hubs with the shortest distance from v to each. For any two vertices
+ * in the same component, some hub on a shortest path between them is in
+ * both labels, so their distance is the smallest sum over the common
+ * hubs, found by merging the two labels like sorted lists.
+ * <p>
+ * Labels are derived from a Contraction Hierarchy, highest rank first:
+ * the label of v is v itself plus, for each upward arc to w, the label
+ * of w shifted by the arc's weight. Entries that a query on the labels
+ * built so far already beats are not shortest distances and are pruned.
+ * Hubs are stored by rank, ascending, in one compressed-sparse-row
+ * layout: the label of v is hubs[labelStart[v]] up to
+ * hubs[labelStart[v + 1]], with distances in the parallel dists array.
+ */
+public class HubLabels {
+    private final RoadGraph graph;
+    private final int[] labelStart;
+    private final int[] hubs;
+    private final double[] dists;
+    private final long buildMillis;
+
+    /**
+     * Computes the labels of every vertex from the hierarchy.
+     * @param ch a hierarchy of the graph to label
+     */
+    public HubLabels(ContractionHierarchy ch) {
+        long start = System.nanoTime();
+        graph = ch.graph();
+        int n = graph.size();
+        int[] byRank = new int[n];
+        for (int v = 0; v < n; v++) {
+            byRank[ch.rank(v)] = v;
+        }
+
+        // labels are built in separate arrays, then packed
+        int[][] labelHubs = new int[n][];
+        double[][] labelDists = new double[n][];
+        double[] best = new double[n];
+        int[] stamp = new int[n];
+        int[] touched = new int[16];
+        for (int r = n - 1; r >= 0; r--) {
+            int v = byRank[r];
+            int generation = n - r;
+            int count = 0;
+            touched[count++] = r;
+            stamp[r] = generation;
+            best[r] = 0.0;
+            for (int arc = ch.firstUp(v); arc < ch.endUp(v); arc++) {
+                int w = ch.upTarget(arc);
+                double weight = ch.upWeight(arc);
+                int[] wHubs = labelHubs[w];
+                double[] wDists = labelDists[w];
+                for (int i = 0; i < wHubs.length; i++) {
+                    int hub = wHubs[i];
+                    double d = weight + wDists[i];
+                    if (stamp[hub] != generation) {
+                        if (count == touched.length) {
+                            touched = Arrays.copyOf(touched, count * 2);
+                        }
+                        touched[count++] = hub;
+                        stamp[hub] = generation;
+                        best[hub] = d;
+                    } else if (d < best[hub]) {
+                        best[hub] = d;
+                    }
+                }
+            }
+            int[] tentative = Arrays.copyOf(touched, count);
+            Arrays.sort(tentative);
+            double[] tentativeDists = new double[count];
+            for (int i = 0; i < count; i++) {
+                tentativeDists[i] = best[tentative[i]];
+            }
+
+            // keep an entry only if no other hub gives a shorter way there
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int hub = tentative[i];
+                int h = byRank[hub];
+                if (hub == r || merge(tentative, tentativeDists, 0, count,
+                                      labelHubs[h], labelDists[h], 0, labelHubs[h].length)
+                                >= tentativeDists[i]) {
+                    tentative[kept] = hub;
+                    tentativeDists[kept] = tentativeDists[i];
+                    kept++;
+                }
+            }
+            labelHubs[v] = Arrays.copyOf(tentative, kept);
+            labelDists[v] = Arrays.copyOf(tentativeDists, kept);
+        }
+
+        labelStart = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            labelStart[v + 1] = labelStart[v] + labelHubs[v].length;
+        }
+        hubs = new int[labelStart[n]];
+        dists = new double[labelStart[n]];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(labelHubs[v], 0, hubs, labelStart[v], labelHubs[v].length);
+            System.arraycopy(labelDists[v], 0, dists, labelStart[v], labelDists[v].length);
+        }
+        buildMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // smallest sum of distances over hubs in both ranges, both sorted
+    private static double merge(int[] hubsA, double[] distsA, int a, int endA,
+                                int[] hubsB, double[] distsB, int b, int endB) {
+        double best = Double.POSITIVE_INFINITY;
+        while (a < endA && b < endB) {
+            if (hubsA[a] < hubsB[b]) {
+                a++;
+            } else if (hubsA[a] > hubsB[b]) {
+                b++;
+            } else {
+                best = Math.min(best, distsA[a++] + distsB[b++]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the shortest distance between u and v, 0 if they are the
+     * same vertex and infinite if they are not connected
+     */
+    public double distance(int u, int v) {
+        return merge(hubs, dists, labelStart[u], labelStart[u + 1],
+                     hubs, dists, labelStart[v], labelStart[v + 1]);
+    }
+
+    /**
+     * Finds a shortest path by walking from source to target, each step
+     * moving to the neighbor with the smallest edge weight plus label
+     * distance to target. That neighbor is always on a shortest path.
+     * @return the vertex ids from source to target, or null if they are
+     * not connected
+     * @throws IllegalStateException if the walk does not reach target,
+     * which means the labels are inconsistent with the graph
+     */
+    public int[] path(int source, int target) {
+        if (distance(source, target) == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        int[] path = new int[16];
+        int length = 0;
+        path[length++] = source;
+        int v = source;
+        // weights are positive, so the remaining distance shrinks each step
+        while (v != target && length <= graph.size()) {
+            int next = -1;
+            double nextDist = Double.POSITIVE_INFINITY;
+            for (int arc = graph.firstArc(v); arc < graph.endArc(v); arc++) {
+                int w = graph.target(arc);
+                double d = graph.weight(arc) + distance(w, target);
+                if (d < nextDist) {
+                    next = w;
+                    nextDist = d;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            if (length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = next;
+            v = next;
+        }
+        if (v != target) {
+            throw new IllegalStateException("label walk from " + source + " did not reach " + target);
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * @return the graph the labels describe
+     */
+    public RoadGraph graph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of hubs in the label of v
+     */
+    public int labelSize(int v) {
+        return labelStart[v + 1] - labelStart[v];
+    }
+
+    /**
+     * @return the total number of hubs in all labels
+     */
+    public long totalLabelSize() {
+        return hubs.length;
+    }
+
+    /**
+     * @return the bytes taken by the label arrays
+     */
+    public long memoryBytes() {
+        return 4L * labelStart.length + 4L * hubs.length + 8L * dists.length;
+    }
+
+    /**
+     * @return wall-clock milliseconds spent building the labels, not
+     * counting the hierarchy they were derived from
+     */
+    public long buildMillis() {
+        return buildMillis;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * Indexed 4-ary min-heap of vertex ids 0..capacity-1 with double keys.
+ * Each vertex is in the heap at most once: position[v] says where, so
+ * lowering the key of a queued vertex moves it in place instead of
+ * adding a duplicate, and the heap never holds more than one entry per
+ * vertex. Four children per node make the heap half as deep as a binary
+ * one, and the four keys compared at each step of a sift down sit next
+ * to each other in memory.
+ * <p>
+ * Vertices and keys are stored in primitive arrays allocated once, so
+ * the heap allocates nothing after construction and can be reused by
+ * clearing it.
+ */
+public class IndexedHeap {
+    private static final int ARITY = 4;
+
+    private final int[] heap;
+    private final double[] keys;
+    private final int[] position;
+    private int size;
+
+    /**
+     * @param capacity one more than the largest vertex id to be queued
+     */
+    public IndexedHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int vertex) {
+        return position[vertex] >= 0;
+    }
+
+    /**
+     * Removes every vertex, in time proportional to how many are queued.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds vertex with the given key, or moves it to the new key if it is
+     * already queued.
+     */
+    public void update(int vertex, double key) {
+        int i = position[vertex];
+        if (i < 0) {
+            siftUp(size++, vertex, key);
+        } else if (key < keys[i]) {
+            siftUp(i, vertex, key);
+        } else {
+            siftDown(i, vertex, key);
+        }
+    }
+
+    /**
+     * @return the smallest key in the heap, which must not be empty
+     */
+    public double minKey() {
+        return keys[0];
+    }
+
+    /**
+     * Removes the vertex with the smallest key.
+     * @return that vertex
+     */
+    public int removeMin() {
+        int min = heap[0];
+        position[min] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, heap[size], keys[size]);
+        }
+        return min;
+    }
+
+    // moves ancestors down until vertex's slot on the path from i is found
+    private void siftUp(int i, int vertex, double key) {
+        while (i > 0) {
+            int parent = (i - 1) / ARITY;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(i, heap[parent], keys[parent]);
+            i = parent;
+        }
+        place(i, vertex, key);
+    }
+
+    private void siftDown(int i, int vertex, double key) {
+        while (true) {
+            int first = ARITY * i + 1;
+            if (first >= size) {
+                break;
+            }
+            int last = Math.min(first + ARITY, size);
+            int child = first;
+            for (int c = first + 1; c < last; c++) {
+                if (keys[c] < keys[child]) {
+                    child = c;
+                }
+            }
+            if (keys[child] >= key) {
+                break;
+            }
+            place(i, heap[child], keys[child]);
+            i = child;
+        }
+        place(i, vertex, key);
+    }
+
+    private void place(int i, int vertex, double key) {
+        heap[i] = vertex;
+        keys[i] = key;
+        position[vertex] = i;
+    }
+}
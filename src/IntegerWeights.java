@@ -0,0 +1,79 @@
+/**
+ * Edge lengths of a RoadGraph rounded to whole multiples of a resolution,
+ * say hundredths of a mile, so Dijkstra's algorithm can run on integer
+ * distances with a BucketQueue instead of a comparison heap. The queue
+ * needs one bucket per unit of the longest edge, so the resolution may
+ * not be finer than the longest edge over MAX_UNITS.
+ * <p>
+ * Rounding moves each edge length by at most half the resolution, so a
+ * route of k edges measures within k * resolution / 2 of its true
+ * length. The route found is shortest under the rounded lengths, which
+ * bounds its true length: it is longer than a truly shortest route by at
+ * most (k + k*) * resolution / 2, where k and k* are the edge counts of
+ * the two routes. In practice the rounding errors mostly cancel and the
+ * difference is far smaller, often zero.
+ */
+public class IntegerWeights {
+    /** the most units any one edge may round to */
+    public static final int MAX_UNITS = 1 << 20;
+
+    private final double resolution;
+    private final int[] units;
+    private final int maxUnits;
+
+    /**
+     * Rounds every arc length of the graph to the nearest multiple of
+     * resolution.
+     * @param graph the graph whose lengths to round
+     * @param resolution miles per unit
+     * @throws IllegalArgumentException if resolution is not positive and
+     * finite, or so fine that some edge is more than MAX_UNITS units
+     */
+    public IntegerWeights(RoadGraph graph, double resolution) {
+        if (!(resolution > 0) || Double.isInfinite(resolution)) {
+            throw new IllegalArgumentException("resolution must be positive: " + resolution);
+        }
+        this.resolution = resolution;
+        units = new int[graph.arcCount()];
+        int max = 0;
+        for (int arc = 0; arc < units.length; arc++) {
+            double scaled = Math.rint(graph.weight(arc) / resolution);
+            if (scaled > MAX_UNITS) {
+                throw new IllegalArgumentException("resolution " + resolution + " is too fine for edge of "
+                                                   + graph.weight(arc) + " miles");
+            }
+            units[arc] = (int) scaled;
+            max = Math.max(max, units[arc]);
+        }
+        maxUnits = max;
+    }
+
+    /**
+     * @return miles per unit
+     */
+    public double resolution() {
+        return resolution;
+    }
+
+    /**
+     * @return the length of the longest arc in units
+     */
+    public int maxUnits() {
+        return maxUnits;
+    }
+
+    /**
+     * @return the length of the arc in units
+     */
+    public int units(int arc) {
+        return units[arc];
+    }
+
+    /**
+     * @return the most by which the route found for a query can be longer
+     * than a shortest one, given the edge counts of the two routes
+     */
+    public double errorBound(int edges, int shortestEdges) {
+        return (edges + shortestEdges) * resolution / 2;
+    }
+}
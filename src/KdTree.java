@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+/**
+ * Static 2-d tree over vertices of a RoadGraph, answering nearest vertex
+ * queries under Point.distance. Nodes are implicit: a node covers a range
+ * of the permuted id array, keeps its median vertex at the middle of the
+ * range, and stores the bounding box of the whole range. A subtree is
+ * skipped when the smallest distance Point.distance could give for any
+ * coordinate in its box already exceeds the best distance found.
+ * <p>
+ * Results match a linear scan in ascending id order that keeps the first
+ * strictly closer vertex: among equally distant vertices the lowest id
+ * wins. k-nearest queries keep a bounded max-heap of the best k
+ * candidates and prune against its worst entry.
+ */
+public class KdTree {
+    private static final int LEAF_SIZE = 8;
+    // slack so rounding in the bound never prunes an exact tie
+    private static final double BOUND_SLACK = 1 - 1e-9;
+
+    private final RoadGraph graph;
+    private final int[] ids;
+    private final double[] minLat;
+    private final double[] maxLat;
+    private final double[] minLon;
+    private final double[] maxLon;
+
+    /**
+     * Builds a tree over every vertex of the graph.
+     */
+    public KdTree(RoadGraph graph) {
+        this(graph, allVertices(graph));
+    }
+
+    /**
+     * Builds a tree over the given vertices of the graph.
+     * @param graph the graph the vertex ids refer to
+     * @param vertices the ids to index; the array is not retained
+     */
+    public KdTree(RoadGraph graph, int[] vertices) {
+        this.graph = graph;
+        this.ids = vertices.clone();
+        int n = ids.length;
+        minLat = new double[n];
+        maxLat = new double[n];
+        minLon = new double[n];
+        maxLon = new double[n];
+        build(0, n);
+    }
+
+    private static int[] allVertices(RoadGraph graph) {
+        int[] all = new int[graph.size()];
+        for (int v = 0; v < all.length; v++) {
+            all[v] = v;
+        }
+        return all;
+    }
+
+    /**
+     * @return the number of indexed vertices
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    // a node's box is stored at the index of its median
+    private void build(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double latLo = Double.POSITIVE_INFINITY, latHi = Double.NEGATIVE_INFINITY;
+        double lonLo = Double.POSITIVE_INFINITY, lonHi = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            double lat = graph.lat(ids[i]);
+            double lon = graph.lon(ids[i]);
+            latLo = Math.min(latLo, lat);
+            latHi = Math.max(latHi, lat);
+            lonLo = Math.min(lonLo, lon);
+            lonHi = Math.max(lonHi, lon);
+        }
+        minLat[mid] = latLo;
+        maxLat[mid] = latHi;
+        minLon[mid] = lonLo;
+        maxLon[mid] = lonHi;
+        if (hi - lo <= LEAF_SIZE) {
+            return;
+        }
+        // split the wider side, measuring longitude at the box's latitude
+        double cos = Math.cos(Math.toRadians((latLo + latHi) / 2));
+        boolean byLat = latHi - latLo >= (lonHi - lonLo) * Math.abs(cos);
+        select(lo, hi - 1, mid, byLat);
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    private double key(int v, boolean byLat) {
+        return byLat ? graph.lat(v) : graph.lon(v);
+    }
+
+    // rearranges ids[lo..hi] so ids[k] has the k-th smallest key
+    private void select(int lo, int hi, int k, boolean byLat) {
+        while (lo < hi) {
+            double pivot = key(ids[(lo + hi) >>> 1], byLat);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key(ids[i], byLat) < pivot) i++;
+                while (key(ids[j], byLat) > pivot) j--;
+                if (i <= j) {
+                    int tmp = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the indexed vertex closest to p.
+     * @param p a point, not necessarily in the graph
+     * @return the id of the closest vertex, or -1 if the tree is empty
+     */
+    public int nearest(Point p) {
+        Candidates best = new Candidates(1);
+        search(0, ids.length, p, best);
+        return best.size == 0 ? -1 : best.ids[0];
+    }
+
+    /**
+     * Finds the k indexed vertices closest to p, ordered by distance and
+     * then by id, so the first entry is always nearest(p).
+     * @param p a point, not necessarily in the graph
+     * @param k how many vertices to return
+     * @return up to k vertex ids, fewer if the tree holds fewer
+     * @throws IllegalArgumentException if k is negative
+     */
+    public int[] nearest(Point p, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        Candidates best = new Candidates(Math.min(k, ids.length));
+        search(0, ids.length, p, best);
+        return best.drain();
+    }
+
+    /**
+     * Bounded max-heap of the best vertices seen so far, ordered by
+     * distance then id, so the root is the candidate to evict next.
+     */
+    private static class Candidates {
+        final int[] ids;
+        final double[] dists;
+        int size;
+
+        Candidates(int capacity) {
+            ids = new int[capacity];
+            dists = new double[capacity];
+        }
+
+        // distance a subtree must beat to matter
+        double bound() {
+            return size < ids.length ? Double.POSITIVE_INFINITY : dists[0];
+        }
+
+        void offer(int v, double dist) {
+            if (size < ids.length) {
+                ids[size] = v;
+                dists[size] = dist;
+                siftUp(size++);
+            } else if (ids.length > 0 && worse(ids[0], dists[0], v, dist)) {
+                ids[0] = v;
+                dists[0] = dist;
+                siftDown(0, size);
+            }
+        }
+
+        // true if (v, dist) should be evicted before (u, other)
+        private static boolean worse(int v, double dist, int u, double other) {
+            return dist > other || (dist == other && v > u);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!worse(ids[i], dists[i], ids[parent], dists[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int end) {
+            while (2 * i + 1 < end) {
+                int child = 2 * i + 1;
+                if (child + 1 < end && worse(ids[child + 1], dists[child + 1], ids[child], dists[child])) {
+                    child++;
+                }
+                if (!worse(ids[child], dists[child], ids[i], dists[i])) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double dist = dists[i];
+            dists[i] = dists[j];
+            dists[j] = dist;
+        }
+
+        // heapsort in place, leaving the closest candidate first
+        int[] drain() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return Arrays.copyOf(ids, size);
+        }
+    }
+
+    private void search(int lo, int hi, Point p, Candidates best) {
+        if (lo >= hi || best.ids.length == 0) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (lowerBound(mid, p) > best.bound()) {
+            return;
+        }
+        if (hi - lo <= LEAF_SIZE) {
+            for (int i = lo; i < hi; i++) {
+                best.offer(ids[i], graph.point(ids[i]).distance(p));
+            }
+            return;
+        }
+        best.offer(ids[mid], graph.point(ids[mid]).distance(p));
+        int leftMid = (lo + mid) >>> 1;
+        int rightMid = (mid + 1 + hi) >>> 1;
+        boolean leftFirst = mid + 1 >= hi
+            || (lo < mid && lowerBound(leftMid, p) <= lowerBound(rightMid, p));
+        if (leftFirst) {
+            search(lo, mid, p, best);
+            search(mid + 1, hi, p, best);
+        } else {
+            search(mid + 1, hi, p, best);
+            search(lo, mid, p, best);
+        }
+    }
+
+    /**
+     * Smallest distance from p to any coordinate in the node's box, never
+     * larger than Point.distance for a vertex in the box. Point.distance
+     * scales the longitude difference by the cosine of the mean latitude,
+     * so the bound uses the smallest such cosine over the box.
+     */
+    private double lowerBound(int node, Point p) {
+        double lat = p.getLat();
+        double lon = p.getLon();
+        double dLat = Math.max(0, Math.max(minLat[node] - lat, lat - maxLat[node]));
+        double dLon = Math.max(0, Math.max(minLon[node] - lon, lon - maxLon[node]));
+        if (dLat == 0 && dLon == 0) {
+            return 0;
+        }
+        double farLat = Math.max(Math.abs(minLat[node] + lat), Math.abs(maxLat[node] + lat)) / 2;
+        double cos = farLat >= 90 ? 0 : Math.cos(Math.toRadians(farLat));
+        double x = cos * Math.toRadians(dLon);
+        double y = Math.toRadians(dLat);
+        return RoadGraph.EARTH_RADIUS * Math.sqrt(x * x + y * y) * BOUND_SLACK;
+    }
+}
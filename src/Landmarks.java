@@ -0,0 +1,309 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Landmark distance tables for ALT, A* with landmarks and the triangle
+ * inequality. For a landmark L and any vertices v, t the graph is
+ * undirected, so |d(L, t) - d(L, v)| is a lower bound on d(v, t); the
+ * largest such bound over all landmarks is a much tighter A* heuristic
+ * than the straight line between v and t, especially along roads that
+ * wind away from the straight line.
+ * <p>
+ * Distances are stored in one double array, vertex-major, so the k
+ * landmark distances of a vertex are adjacent in memory. Landmarks are
+ * placed in the largest connected component, where long queries happen;
+ * lowerBound also takes the chord bound into account, so vertices in
+ * other components still get the straight-line heuristic.
+ */
+public class Landmarks {
+    // keeps rounding in the distance tables from overestimating
+    private static final double BOUND_SLACK = 1 - 1e-9;
+    // roots of the avoid trees are drawn from a fixed seed, so building
+    // twice gives the same landmarks
+    private static final long ROOT_SEED = 7;
+
+    /**
+     * How landmarks are chosen.
+     */
+    public enum Selection {
+        /**
+         * Each landmark is the vertex farthest from the landmarks chosen
+         * so far, which spreads them around the edge of the graph.
+         */
+        FARTHEST,
+        /**
+         * Each landmark is the leaf of a shortest path tree, grown from a
+         * random vertex, whose subtree the current landmarks bound worst
+         * (Goldberg and Werneck's avoid heuristic).
+         */
+        AVOID
+    }
+
+    private final RoadGraph graph;
+    private final int[] landmarks;
+    private final double[] table;
+    private final long buildMillis;
+
+    /**
+     * Selects landmarks and computes the distance from each of them to
+     * every vertex.
+     * @param graph the graph to preprocess
+     * @param count how many landmarks to place
+     * @param selection how to place them
+     * @throws IllegalArgumentException if count is not positive
+     */
+    public Landmarks(RoadGraph graph, int count, Selection selection) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        long start = System.nanoTime();
+        this.graph = graph;
+        int n = graph.size();
+        int largest = largestComponent(graph);
+        int first = 0;
+        while (first < n && graph.component(first) != largest) {
+            first++;
+        }
+
+        int[] members = new int[0];
+        if (selection == Selection.AVOID) {
+            members = IntStream.range(0, n).filter(v -> graph.component(v) == largest).toArray();
+        }
+        Random random = new Random(ROOT_SEED);
+
+        int[] chosen = new int[count];
+        double[][] dist = new double[count][];
+        // distance from each vertex to its closest landmark so far
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        int k = 0;
+        while (k < count && first < n) {
+            int landmark;
+            if (selection == Selection.FARTHEST) {
+                landmark = k == 0 ? farthest(new Tree(graph, first).dist, largest)
+                    : farthest(nearest, largest);
+            } else {
+                landmark = avoid(new Tree(graph, members[random.nextInt(members.length)]),
+                                 chosen, dist, k);
+            }
+            if (nearest[landmark] == 0) {
+                // the avoid walk can stop at a root that is a landmark
+                landmark = farthest(nearest, largest);
+            }
+            if (nearest[landmark] == 0) {
+                // every vertex of the component is already a landmark
+                break;
+            }
+            chosen[k] = landmark;
+            dist[k] = new Tree(graph, landmark).dist;
+            for (int v = 0; v < n; v++) {
+                nearest[v] = Math.min(nearest[v], dist[k][v]);
+            }
+            k++;
+        }
+
+        landmarks = Arrays.copyOf(chosen, k);
+        table = new double[n * k];
+        for (int i = 0; i < k; i++) {
+            for (int v = 0; v < n; v++) {
+                table[v * k + i] = dist[i][v];
+            }
+        }
+        buildMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // component with the most vertices, the lowest id among equals
+    private static int largestComponent(RoadGraph graph) {
+        int[] size = new int[graph.componentCount()];
+        for (int v = 0; v < graph.size(); v++) {
+            size[graph.component(v)]++;
+        }
+        int best = 0;
+        for (int c = 1; c < size.length; c++) {
+            if (size[c] > size[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // the lowest id vertex of the component with the largest finite value
+    private int farthest(double[] values, int component) {
+        int best = -1;
+        for (int v = 0; v < values.length; v++) {
+            if (graph.component(v) == component && values[v] < Double.POSITIVE_INFINITY
+                && (best < 0 || values[v] > values[best])) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Walks down the shortest path tree from its root, always into the
+     * child whose subtree is worst covered, and returns the leaf reached.
+     * A vertex is weighted by how far the current landmarks underestimate
+     * its distance from the root; a subtree's size is the sum of its
+     * weights, or zero if it already holds a landmark.
+     */
+    private int avoid(Tree tree, int[] chosen, double[][] dist, int k) {
+        int n = graph.size();
+        int root = tree.root;
+        double[] size = new double[n];
+        boolean[] covered = new boolean[n];
+        for (int i = 0; i < k; i++) {
+            covered[chosen[i]] = true;
+        }
+        for (int j = tree.order.length - 1; j >= 0; j--) {
+            int v = tree.order[j];
+            double bound = 0;
+            for (int i = 0; i < k; i++) {
+                bound = Math.max(bound, Math.abs(dist[i][v] - dist[i][root]));
+            }
+            size[v] += tree.dist[v] - bound;
+            int parent = tree.parent[v];
+            if (parent >= 0) {
+                covered[parent] |= covered[v];
+                size[parent] += size[v];
+            }
+        }
+        for (int v : tree.order) {
+            if (covered[v]) {
+                size[v] = 0;
+            }
+        }
+
+        // children of each vertex, in settle order
+        int[] childStart = new int[n + 1];
+        for (int v : tree.order) {
+            if (tree.parent[v] >= 0) {
+                childStart[tree.parent[v] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            childStart[v + 1] += childStart[v];
+        }
+        int[] children = new int[tree.order.length];
+        int[] fill = Arrays.copyOf(childStart, n);
+        for (int v : tree.order) {
+            if (tree.parent[v] >= 0) {
+                children[fill[tree.parent[v]]++] = v;
+            }
+        }
+
+        int v = root;
+        while (true) {
+            int next = -1;
+            for (int c = childStart[v]; c < childStart[v + 1]; c++) {
+                int child = children[c];
+                if (size[child] > 0 && (next < 0 || size[child] > size[next])) {
+                    next = child;
+                }
+            }
+            if (next < 0) {
+                return v;
+            }
+            v = next;
+        }
+    }
+
+    /**
+     * Shortest path tree from one vertex to all vertices it can reach,
+     * with the vertices in the order Dijkstra settled them.
+     */
+    private static class Tree {
+        final int root;
+        final double[] dist;
+        final int[] parent;
+        final int[] order;
+
+        Tree(RoadGraph graph, int root) {
+            this.root = root;
+            int n = graph.size();
+            dist = new double[n];
+            parent = new int[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(parent, -1);
+            int[] settledOrder = new int[n];
+            boolean[] settled = new boolean[n];
+            int count = 0;
+            IndexedHeap queue = new IndexedHeap(n);
+            dist[root] = 0.0;
+            queue.update(root, 0.0);
+            while (!queue.isEmpty()) {
+                int v = queue.removeMin();
+                settled[v] = true;
+                settledOrder[count++] = v;
+                for (int arc = graph.firstArc(v); arc < graph.endArc(v); arc++) {
+                    int w = graph.target(arc);
+                    if (settled[w]) continue;
+                    double d = dist[v] + graph.weight(arc);
+                    if (d < dist[w]) {
+                        dist[w] = d;
+                        parent[w] = v;
+                        queue.update(w, d);
+                    }
+                }
+            }
+            order = Arrays.copyOf(settledOrder, count);
+        }
+    }
+
+    /**
+     * @return the graph the tables were computed for
+     */
+    public RoadGraph graph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of landmarks, at most the count asked for
+     */
+    public int count() {
+        return landmarks.length;
+    }
+
+    /**
+     * @return the vertex id of landmark i
+     */
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * @return the shortest distance from landmark i to v, infinite if v
+     * is in another component
+     */
+    public double distance(int i, int v) {
+        return table[v * landmarks.length + i];
+    }
+
+    /**
+     * @return wall-clock milliseconds spent selecting landmarks and
+     * computing their tables
+     */
+    public long buildMillis() {
+        return buildMillis;
+    }
+
+    /**
+     * Lower bound on the shortest distance between v and t: the largest
+     * of the landmark bounds and the chord bound. Each is consistent, so
+     * their maximum is a consistent A* heuristic.
+     */
+    public double lowerBound(int v, int t) {
+        int k = landmarks.length;
+        int rowV = v * k;
+        int rowT = t * k;
+        double best = 0;
+        for (int i = 0; i < k; i++) {
+            double diff = Math.abs(table[rowT + i] - table[rowV + i]);
+            // NaN when both are infinite, which Math.max would propagate
+            if (diff > best && diff < Double.POSITIVE_INFINITY) {
+                best = diff;
+            }
+        }
+        return Math.max(best * BOUND_SLACK, graph.lowerBound(v, t));
+    }
+}
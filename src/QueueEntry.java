@@ -0,0 +1,20 @@
+/**
+ * Vertex and priority held in the PriorityQueue that picks the
+ * contraction order in ContractionHierarchy. A vertex whose priority
+ * has grown when it comes off the queue is added again with the new
+ * priority; entries of vertices already contracted are skipped.
+ */
+public class QueueEntry implements Comparable<QueueEntry> {
+    final int vertex;
+    final double key;
+
+    public QueueEntry(int vertex, double key) {
+        this.vertex = vertex;
+        this.key = key;
+    }
+
+    @Override
+    public int compareTo(QueueEntry other) {
+        return Double.compare(key, other.key);
+    }
+}
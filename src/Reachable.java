@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The result of GraphProcessor.reachableWithin: every vertex within a
+ * road distance of an origin, with its distance, held in parallel
+ * primitive arrays in order of distance, origin first.
+ */
+public class Reachable {
+    private final RoadGraph graph;
+    private final int[] vertices;
+    private final double[] distances;
+
+    Reachable(RoadGraph graph, int[] vertices, double[] distances) {
+        this.graph = graph;
+        this.vertices = vertices;
+        this.distances = distances;
+    }
+
+    /**
+     * @return how many vertices were reached
+     */
+    public int size() {
+        return vertices.length;
+    }
+
+    /**
+     * @return the ids of the reached vertices, nearest first
+     */
+    public int[] vertices() {
+        return vertices.clone();
+    }
+
+    /**
+     * @return the road distances in miles of the reached vertices, in
+     * the order of vertices()
+     */
+    public double[] distances() {
+        return distances.clone();
+    }
+
+    /**
+     * @return the i-th reached point
+     */
+    public Point point(int i) {
+        return graph.point(vertices[i]);
+    }
+
+    /**
+     * @return the road distance in miles of the i-th reached point
+     */
+    public double distance(int i) {
+        return distances[i];
+    }
+
+    /**
+     * Computes the convex hull of the reached points, treating latitude
+     * and longitude as plane coordinates, with Andrew's monotone chain.
+     * The outline is computed on each call; the query itself does not
+     * pay for it.
+     * @return the corners of the hull counterclockwise, each once, or
+     * every distinct point when there are fewer than three
+     */
+    public List<Point> outline() {
+        List<Point> points = new ArrayList<>(vertices.length);
+        for (int v : vertices) {
+            points.add(graph.point(v));
+        }
+        points.sort(Comparator.comparingDouble(Point::getLon).thenComparingDouble(Point::getLat));
+        int n = points.size();
+        Point[] hull = new Point[2 * n];
+        int k = 0;
+        // lower chain left to right, then upper chain right to left
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], points.get(i)) <= 0) {
+                k--;
+            }
+            hull[k++] = points.get(i);
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], points.get(i)) <= 0) {
+                k--;
+            }
+            hull[k++] = points.get(i);
+        }
+        // the upper chain ends where the lower one began
+        int corners = n < 2 ? n : k - 1;
+        return new ArrayList<>(Arrays.asList(hull).subList(0, corners));
+    }
+
+    // positive if o, a, b turn counterclockwise
+    private static double cross(Point o, Point a, Point b) {
+        return (a.getLon() - o.getLon()) * (b.getLat() - o.getLat())
+            - (a.getLat() - o.getLat()) * (b.getLon() - o.getLon());
+    }
+}
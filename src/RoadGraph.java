@@ -0,0 +1,304 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable undirected road graph stored in compressed-sparse-row form.
+ * Vertices are int ids 0..size()-1 with coordinates in parallel double
+ * arrays; the neighbors of vertex v are targets[offsets[v]] up to
+ * targets[offsets[v + 1]]. Point objects are only created at the API
+ * boundary, by point(int) and vertexId(Point).
+ * <p>
+ * The vertex set matches what the original map based representation
+ * held: one vertex per distinct coordinate that appears in some edge.
+ * Vertices in the file that share coordinates collapse into one vertex,
+ * duplicate edges and self loops are dropped, and ids are assigned in
+ * the order vertices first appear in the file.
+ * <p>
+ * Edge lengths never change, so each arc's length is computed once with
+ * Point.distance when the graph is built and read back with weight(int).
+ * Connected components are labeled once at build time with union-find,
+ * numbered in order of their lowest vertex id.
+ */
+public class RoadGraph {
+    private static final int NO_VERTEX = -1;
+    // miles, as in Point.distance; KdTree and GridIndex bound distances
+    // with this one copy so the bounds cannot drift from it
+    static final double EARTH_RADIUS = 3963.2;
+    // keeps rounding from lifting the chord bound above an edge length
+    private static final double CHORD_SLACK = 1 - 1e-9;
+    // below this many vertices computing weights on one thread is faster
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final double[] lats;
+    private final double[] lons;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    private final double[] unit;
+    private final int[] component;
+    private final int componentCount;
+    private final int[] lookup;
+
+    /**
+     * Builds the graph from parsed .graph data.
+     * @param data the vertices and edges as read from the file
+     */
+    public RoadGraph(GraphData data) {
+        int numFile = data.vertexCount();
+        int numEdges = data.edgeCount();
+
+        // map each file vertex that is used by an edge to a graph id,
+        // merging file vertices that have the same coordinates
+        int[] idOf = new int[numFile];
+        Arrays.fill(idOf, NO_VERTEX);
+        boolean[] used = new boolean[numFile];
+        for (int k = 0; k < numEdges; k++) {
+            used[data.edgeFrom(k)] = true;
+            used[data.edgeTo(k)] = true;
+        }
+        int usedCount = 0;
+        for (int i = 0; i < numFile; i++) {
+            if (used[i]) {
+                usedCount++;
+            }
+        }
+        int[] table = newTable(usedCount);
+        double[] latBuf = new double[usedCount];
+        double[] lonBuf = new double[usedCount];
+        int n = 0;
+        for (int i = 0; i < numFile; i++) {
+            if (!used[i]) {
+                continue;
+            }
+            double lat = data.lat(i);
+            double lon = data.lon(i);
+            int slot = findSlot(table, latBuf, lonBuf, lat, lon);
+            if (table[slot] == NO_VERTEX) {
+                latBuf[n] = lat;
+                lonBuf[n] = lon;
+                table[slot] = n++;
+            }
+            idOf[i] = table[slot];
+        }
+        lats = Arrays.copyOf(latBuf, n);
+        lons = Arrays.copyOf(lonBuf, n);
+        lookup = table;
+
+        // bucket both directions of every edge by source vertex
+        int[] degree = new int[n + 1];
+        for (int k = 0; k < numEdges; k++) {
+            int u = idOf[data.edgeFrom(k)];
+            int v = idOf[data.edgeTo(k)];
+            if (u != v) {
+                degree[u]++;
+                degree[v]++;
+            }
+        }
+        int[] start = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            start[v + 1] = start[v] + degree[v];
+        }
+        int[] fill = Arrays.copyOf(start, n);
+        int[] raw = new int[start[n]];
+        for (int k = 0; k < numEdges; k++) {
+            int u = idOf[data.edgeFrom(k)];
+            int v = idOf[data.edgeTo(k)];
+            if (u != v) {
+                raw[fill[u]++] = v;
+                raw[fill[v]++] = u;
+            }
+        }
+
+        // sort each row and drop parallel edges
+        offsets = new int[n + 1];
+        int out = 0;
+        for (int v = 0; v < n; v++) {
+            offsets[v] = out;
+            Arrays.sort(raw, start[v], start[v + 1]);
+            for (int e = start[v]; e < start[v + 1]; e++) {
+                if (e == start[v] || raw[e] != raw[e - 1]) {
+                    raw[out++] = raw[e];
+                }
+            }
+        }
+        offsets[n] = out;
+        targets = Arrays.copyOf(raw, out);
+
+        weights = new double[out];
+        unit = new double[3 * n];
+        IntStream rows = IntStream.range(0, n);
+        if (n >= PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        rows.forEach(this::computeWeights);
+
+        int[] parent = new int[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+        }
+        for (int v = 0; v < n; v++) {
+            for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                int a = find(parent, v);
+                int b = find(parent, targets[arc]);
+                // the smaller id becomes the root, keeping roots stable
+                if (a < b) {
+                    parent[b] = a;
+                } else if (b < a) {
+                    parent[a] = b;
+                }
+            }
+        }
+        component = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            int root = find(parent, v);
+            component[v] = root == v ? count++ : component[root];
+        }
+        componentCount = count;
+    }
+
+    // root of v's set, halving the path on the way up
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private void computeWeights(int v) {
+        double lat = Math.toRadians(lats[v]);
+        double lon = Math.toRadians(lons[v]);
+        unit[3 * v] = Math.cos(lat) * Math.cos(lon);
+        unit[3 * v + 1] = Math.cos(lat) * Math.sin(lon);
+        unit[3 * v + 2] = Math.sin(lat);
+        Point from = point(v);
+        for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+            weights[arc] = from.distance(point(targets[arc]));
+        }
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int size() {
+        return lats.length;
+    }
+
+    /**
+     * @return the number of directed arcs, twice the number of edges
+     */
+    public int arcCount() {
+        return targets.length;
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    /**
+     * @return index into target() of the first neighbor of v
+     */
+    public int firstArc(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @return one past the index into target() of the last neighbor of v
+     */
+    public int endArc(int v) {
+        return offsets[v + 1];
+    }
+
+    public int target(int arc) {
+        return targets[arc];
+    }
+
+    /**
+     * @return the length in miles of the edge behind the arc, the same
+     * value Point.distance gives for its endpoints
+     */
+    public double weight(int arc) {
+        return weights[arc];
+    }
+
+    /**
+     * Lower bound on the length of any path between u and v: the chord
+     * through the earth between them. Every edge weight is at least the
+     * chord between its endpoints, and chords obey the triangle
+     * inequality, so this is a consistent A* heuristic for the weights.
+     */
+    public double lowerBound(int u, int v) {
+        double dx = unit[3 * u] - unit[3 * v];
+        double dy = unit[3 * u + 1] - unit[3 * v + 1];
+        double dz = unit[3 * u + 2] - unit[3 * v + 2];
+        return EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy + dz * dz) * CHORD_SLACK;
+    }
+
+    /**
+     * @return the id of the connected component containing v
+     */
+    public int component(int v) {
+        return component[v];
+    }
+
+    /**
+     * @return the number of connected components
+     */
+    public int componentCount() {
+        return componentCount;
+    }
+
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * @return a Point with the coordinates of vertex v
+     */
+    public Point point(int v) {
+        return new Point(lats[v], lons[v]);
+    }
+
+    /**
+     * Finds the vertex with exactly the coordinates of p.
+     * @param p a point, not necessarily in the graph
+     * @return the vertex id, or -1 if p is not a vertex of the graph
+     */
+    public int vertexId(Point p) {
+        return lookup[findSlot(lookup, lats, lons, p.getLat(), p.getLon())];
+    }
+
+    // open addressing table of vertex ids, at most half full
+    private static int[] newTable(int n) {
+        int capacity = Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, NO_VERTEX);
+        return table;
+    }
+
+    private static int findSlot(int[] table, double[] lats, double[] lons,
+                                double lat, double lon) {
+        int mask = table.length - 1;
+        int slot = hash(lat, lon) & mask;
+        while (table[slot] != NO_VERTEX) {
+            int v = table[slot];
+            if (lats[v] == lat && lons[v] == lon) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(double lat, double lon) {
+        // adding 0.0 turns -0.0 into 0.0, which Point.equals treats as equal
+        long bits = Double.doubleToLongBits(lat + 0.0) * 31 + Double.doubleToLongBits(lon + 0.0);
+        bits *= 0x9E3779B97F4A7C15L;
+        return (int) (bits ^ (bits >>> 32));
+    }
+}
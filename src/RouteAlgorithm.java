@@ -0,0 +1,35 @@
+/**
+ * Selects the search GraphProcessor.route uses for a query. Every
+ * algorithm but BUCKET returns a shortest path; they differ in how much
+ * of the graph they explore to find it.
+ */
+public enum RouteAlgorithm {
+    /** Plain Dijkstra from the start, settling vertices in every direction. */
+    DIJKSTRA,
+    /** A* toward the end, guided by the straight-line lower bound. */
+    ASTAR,
+    /** Dijkstra from both ends at once, stopping when the searches meet. */
+    BIDIRECTIONAL,
+    /**
+     * Upward search on the Contraction Hierarchy; needs
+     * GraphProcessor.buildContractionHierarchy to have been called.
+     */
+    CH,
+    /**
+     * A* guided by landmark distance tables; needs
+     * GraphProcessor.buildLandmarks to have been called.
+     */
+    ALT,
+    /**
+     * Walk along the neighbors the hub labels put closest to the end,
+     * settling no vertices; needs GraphProcessor.buildHubLabels to have
+     * been called.
+     */
+    HUB_LABELS,
+    /**
+     * Dijkstra on edge lengths rounded by GraphProcessor.buildIntegerWeights,
+     * with a bucket queue. Unlike the others, the route may be slightly
+     * longer than a shortest one, within IntegerWeights' bound.
+     */
+    BUCKET
+}
@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Bounded least-recently-used cache of routes, keyed on the algorithm and
+ * the vertex ids of both ends. The graph is undirected, so a route from
+ * a to b is stored once and served reversed for b to a. Eviction keeps
+ * both the number of routes and their estimated memory within limits.
+ * <p>
+ * All methods are synchronized, so one cache can sit in front of route
+ * calls from many threads. Routes are stored as arrays of immutable
+ * points and every hit returns a new list, so callers may change what
+ * they get. Entries belong to one GraphSnapshot: using the cache with
+ * another, after a new graph is loaded or any preprocessing is built,
+ * drops them, so no route found with replaced structures, such as
+ * integer weights of another resolution, is served.
+ */
+public class RouteCache {
+    // rough heap bytes of a cached Point plus its array slot, and of an
+    // entry's map node, key and array header
+    private static final long POINT_BYTES = 40;
+    private static final long ENTRY_BYTES = 96;
+
+    private final int maxRoutes;
+    private final long maxBytes;
+    // access order puts the least recently used entry first
+    private final LinkedHashMap<Key, Point[]> routes = new LinkedHashMap<>(16, 0.75f, true);
+    private GraphSnapshot snapshot;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxRoutes the most routes to hold
+     * @param maxBytes the most estimated heap bytes the routes may take
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public RouteCache(int maxRoutes, long maxBytes) {
+        if (maxRoutes <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("cache limits must be positive: " + maxRoutes + ", " + maxBytes);
+        }
+        this.maxRoutes = maxRoutes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Looks up the route from source to target, counting a hit or a miss.
+     * @return a new list of the route's points, or null if not cached
+     */
+    public synchronized List<Point> get(GraphSnapshot snapshot, RouteAlgorithm algorithm, int source, int target) {
+        useSnapshot(snapshot);
+        Point[] route = routes.get(new Key(algorithm, source, target));
+        if (route == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        List<Point> path = new ArrayList<>(route.length);
+        if (source < target) {
+            for (Point p : route) {
+                path.add(p);
+            }
+        } else {
+            for (int i = route.length - 1; i >= 0; i--) {
+                path.add(route[i]);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Stores the route from source to target, evicting the least
+     * recently used routes as needed. A route too big for the memory
+     * limit on its own is not stored.
+     */
+    public synchronized void put(GraphSnapshot snapshot, RouteAlgorithm algorithm, int source, int target,
+                                 List<Point> path) {
+        useSnapshot(snapshot);
+        long size = ENTRY_BYTES + POINT_BYTES * path.size();
+        if (size > maxBytes) {
+            return;
+        }
+        Point[] route = path.toArray(new Point[0]);
+        if (source > target) {
+            for (int i = 0, j = route.length - 1; i < j; i++, j--) {
+                Point swap = route[i];
+                route[i] = route[j];
+                route[j] = swap;
+            }
+        }
+        Point[] old = routes.put(new Key(algorithm, source, target), route);
+        if (old != null) {
+            bytes -= ENTRY_BYTES + POINT_BYTES * old.length;
+        }
+        bytes += size;
+        Iterator<Point[]> eldest = routes.values().iterator();
+        while (routes.size() > maxRoutes || bytes > maxBytes) {
+            bytes -= ENTRY_BYTES + POINT_BYTES * eldest.next().length;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void useSnapshot(GraphSnapshot snapshot) {
+        if (this.snapshot != snapshot) {
+            this.snapshot = snapshot;
+            routes.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Drops every route; the counters keep their values.
+     */
+    public synchronized void clear() {
+        routes.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    /**
+     * @return the estimated heap bytes of the cached routes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return how many routes were dropped to stay within the limits
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return hits over lookups, or 0 before the first lookup
+     */
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d routes, %d bytes, %d hits, %d misses, %d evictions, hit rate %.3f",
+                             routes.size(), bytes, hits, misses, evictions, hitRate());
+    }
+
+    // the same key for both directions of a pair
+    private static final class Key {
+        private final RouteAlgorithm algorithm;
+        private final int low;
+        private final int high;
+
+        Key(RouteAlgorithm algorithm, int source, int target) {
+            this.algorithm = algorithm;
+            low = Math.min(source, target);
+            high = Math.max(source, target);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return algorithm == k.algorithm && low == k.low && high == k.high;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode((long) low << 32 | high) + algorithm.ordinal();
+        }
+    }
+}
@@ -0,0 +1,499 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point-to-point shortest path search over a RoadGraph. After a search
+ * returns true, path() rebuilds the route and settledCount() reports how
+ * many vertices the search had to settle.
+ * <p>
+ * A RouteSearch is a reusable workspace: its arrays are allocated once
+ * and each search starts a new generation instead of clearing them. A
+ * label whose stamp is not the current generation counts as unset, so
+ * starting a search does not depend on the size of the graph, and a
+ * search allocates nothing. Queues are IndexedHeaps, so a vertex whose
+ * label improves moves within its queue instead of being added again,
+ * and every vertex removed from a queue is settled. One RouteSearch
+ * must only be used by one thread at a time.
+ * <p>
+ * The bidirectional searches keep a second side for the search grown
+ * backward from the target. The graph is undirected, so both directions
+ * scan the same arcs.
+ */
+public class RouteSearch {
+    private final RoadGraph graph;
+    private final Side forward;
+    private Side backward;
+    private int generation;
+    private int meeting = -1;
+    private ContractionHierarchy hierarchy;
+    private int settledCount;
+    private int[] chain = new int[16];
+    private BucketQueue bucketQueue;
+    private IntegerWeights bucketWeights;
+    // targets of a one-to-many search are stamped with its generation
+    private int[] wanted;
+    // miles per unit of the distances in the labels
+    private double scale = 1.0;
+
+    /**
+     * Labels and queue of one search direction.
+     */
+    private class Side {
+        final double[] dist;
+        final int[] prev;
+        final int[] reached;
+        final int[] done;
+        final IndexedHeap queue;
+
+        Side(int n) {
+            dist = new double[n];
+            prev = new int[n];
+            reached = new int[n];
+            done = new int[n];
+            queue = new IndexedHeap(n);
+        }
+
+        double dist(int v) {
+            return reached[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        int prev(int v) {
+            return reached[v] == generation ? prev[v] : -1;
+        }
+
+        boolean settled(int v) {
+            return done[v] == generation;
+        }
+
+        void settle(int v) {
+            done[v] = generation;
+        }
+
+        void label(int v, double d, int parent, double key) {
+            reached[v] = generation;
+            dist[v] = d;
+            prev[v] = parent;
+            queue.update(v, key);
+        }
+    }
+
+    public RouteSearch(RoadGraph graph) {
+        this.graph = graph;
+        forward = new Side(graph.size());
+    }
+
+    /**
+     * @return the graph this workspace searches
+     */
+    public RoadGraph graph() {
+        return graph;
+    }
+
+    // invalidates every label of the previous search
+    private void begin(boolean twoSided, ContractionHierarchy ch) {
+        if (twoSided && backward == null) {
+            backward = new Side(graph.size());
+        }
+        if (generation == Integer.MAX_VALUE) {
+            for (Side side : new Side[] {forward, backward}) {
+                if (side != null) {
+                    Arrays.fill(side.reached, 0);
+                    Arrays.fill(side.done, 0);
+                }
+            }
+            if (wanted != null) {
+                Arrays.fill(wanted, 0);
+            }
+            generation = 0;
+        }
+        generation++;
+        forward.queue.clear();
+        if (backward != null) {
+            backward.queue.clear();
+        }
+        meeting = -1;
+        hierarchy = ch;
+        settledCount = 0;
+        scale = 1.0;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source until target is settled.
+     * @return true if target is reachable from source
+     */
+    public boolean dijkstra(int source, int target) {
+        return search(source, target, false, null);
+    }
+
+    /**
+     * Runs A* from source to target using RoadGraph.lowerBound as the
+     * heuristic. The bound is consistent, so each vertex is settled at
+     * most once and the path found is a shortest one.
+     * @return true if target is reachable from source
+     */
+    public boolean astar(int source, int target) {
+        return search(source, target, true, null);
+    }
+
+    /**
+     * Runs A* from source to target using the landmark lower bound, which
+     * is also consistent.
+     * @return true if target is reachable from source
+     */
+    public boolean alt(Landmarks landmarks, int source, int target) {
+        return search(source, target, true, landmarks);
+    }
+
+    private boolean search(int source, int target, boolean guided, Landmarks landmarks) {
+        begin(false, null);
+        Side side = forward;
+        side.label(source, 0.0, -1, guided ? estimate(landmarks, source, target) : 0.0);
+        while (!side.queue.isEmpty()) {
+            int current = side.queue.removeMin();
+            side.settle(current);
+            settledCount++;
+            if (current == target) {
+                return true;
+            }
+            double base = side.dist[current];
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int next = graph.target(arc);
+                if (side.settled(next)) continue;
+                double newDist = base + graph.weight(arc);
+                if (newDist < side.dist(next)) {
+                    double key = guided ? newDist + estimate(landmarks, next, target) : newDist;
+                    side.label(next, newDist, current, key);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm on edge lengths rounded to whole units,
+     * with a BucketQueue as the queue. Labels hold exact unit counts;
+     * distance() converts them back to miles. See IntegerWeights for how
+     * far the route found can be from a shortest one.
+     * @return true if target is reachable from source
+     */
+    public boolean buckets(IntegerWeights weights, int source, int target) {
+        begin(false, null);
+        if (bucketQueue == null || bucketWeights != weights) {
+            bucketQueue = new BucketQueue(weights.maxUnits());
+            bucketWeights = weights;
+        }
+        bucketQueue.clear();
+        scale = weights.resolution();
+        Side side = forward;
+        side.reached[source] = generation;
+        side.dist[source] = 0.0;
+        side.prev[source] = -1;
+        bucketQueue.add(source, 0L);
+        while (!bucketQueue.isEmpty()) {
+            int current = bucketQueue.removeMin();
+            if (side.settled(current)) continue;
+            side.settle(current);
+            settledCount++;
+            if (current == target) {
+                return true;
+            }
+            // unit sums stay below 2^53, so the doubles are exact integers
+            long base = (long) side.dist[current];
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int next = graph.target(arc);
+                if (side.settled(next)) continue;
+                long newDist = base + weights.units(arc);
+                if (newDist < side.dist(next)) {
+                    side.reached[next] = generation;
+                    side.dist[next] = newDist;
+                    side.prev[next] = current;
+                    bucketQueue.add(next, newDist);
+                }
+            }
+        }
+        return false;
+    }
+
+    private double estimate(Landmarks landmarks, int v, int target) {
+        return landmarks != null ? landmarks.lowerBound(v, target) : graph.lowerBound(v, target);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source and from target at the same
+     * time, always advancing the side whose queue has the smaller key.
+     * Each scanned arc that reaches a vertex labeled by the other side
+     * may improve mu, the best source-target distance seen. The search
+     * stops once the two queue minimums add up to at least mu: any path
+     * not yet seen would have to be at least that long.
+     * @return true if target is reachable from source
+     */
+    public boolean bidirectional(int source, int target) {
+        begin(true, null);
+        forward.label(source, 0.0, -1, 0.0);
+        backward.label(target, 0.0, -1, 0.0);
+        double mu = Double.POSITIVE_INFINITY;
+        while (!forward.queue.isEmpty() && !backward.queue.isEmpty()) {
+            if (forward.queue.minKey() + backward.queue.minKey() >= mu) {
+                break;
+            }
+            boolean ahead = forward.queue.minKey() <= backward.queue.minKey();
+            Side side = ahead ? forward : backward;
+            Side other = ahead ? backward : forward;
+
+            int current = side.queue.removeMin();
+            side.settle(current);
+            settledCount++;
+            double base = side.dist[current];
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int next = graph.target(arc);
+                if (side.settled(next)) continue;
+                double newDist = base + graph.weight(arc);
+                if (newDist < side.dist(next)) {
+                    side.label(next, newDist, current, newDist);
+                }
+                double through = side.dist(next) + other.dist(next);
+                if (through < mu) {
+                    mu = through;
+                    meeting = next;
+                }
+            }
+        }
+        return meeting >= 0;
+    }
+
+    /**
+     * Answers the query on a Contraction Hierarchy built from this
+     * search's graph. Both sides only follow upward arcs, and a vertex
+     * is stalled, its arcs not relaxed, when some higher vertex already
+     * offers it a shorter distance, since then it cannot lie on a
+     * shortest up-path. A side stops once its queue minimum reaches mu,
+     * the best distance through a vertex settled by both sides.
+     * @return true if target is reachable from source
+     */
+    public boolean hierarchy(ContractionHierarchy ch, int source, int target) {
+        begin(true, ch);
+        forward.label(source, 0.0, -1, 0.0);
+        backward.label(target, 0.0, -1, 0.0);
+        double mu = Double.POSITIVE_INFINITY;
+        while (!forward.queue.isEmpty() || !backward.queue.isEmpty()) {
+            boolean ahead = backward.queue.isEmpty()
+                || (!forward.queue.isEmpty() && forward.queue.minKey() <= backward.queue.minKey());
+            Side side = ahead ? forward : backward;
+            Side other = ahead ? backward : forward;
+            if (side.queue.minKey() >= mu) {
+                side.queue.clear();
+                continue;
+            }
+
+            int current = side.queue.removeMin();
+            side.settle(current);
+            settledCount++;
+            double base = side.dist[current];
+            if (base + other.dist(current) < mu) {
+                mu = base + other.dist(current);
+                meeting = current;
+            }
+            if (stalled(ch, current, side)) continue;
+            for (int arc = ch.firstUp(current); arc < ch.endUp(current); arc++) {
+                int next = ch.upTarget(arc);
+                if (side.settled(next)) continue;
+                double newDist = base + ch.upWeight(arc);
+                if (newDist < side.dist(next)) {
+                    side.label(next, newDist, current, newDist);
+                }
+            }
+        }
+        return meeting >= 0;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source until every target in its
+     * component is settled, writing their distances into row.
+     * @param targets vertex ids, duplicates allowed
+     * @param row receives the distance to targets[i] at index i, or
+     * infinity if it is not reachable
+     */
+    public void oneToMany(int source, int[] targets, double[] row) {
+        begin(false, null);
+        if (wanted == null) {
+            wanted = new int[graph.size()];
+        }
+        int remaining = 0;
+        for (int t : targets) {
+            if (wanted[t] != generation && graph.component(t) == graph.component(source)) {
+                wanted[t] = generation;
+                remaining++;
+            }
+        }
+        Side side = forward;
+        side.label(source, 0.0, -1, 0.0);
+        while (remaining > 0 && !side.queue.isEmpty()) {
+            int current = side.queue.removeMin();
+            side.settle(current);
+            settledCount++;
+            if (wanted[current] == generation) {
+                remaining--;
+            }
+            double base = side.dist[current];
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int next = graph.target(arc);
+                if (side.settled(next)) continue;
+                double newDist = base + graph.weight(arc);
+                if (newDist < side.dist(next)) {
+                    side.label(next, newDist, current, newDist);
+                }
+            }
+        }
+        for (int i = 0; i < targets.length; i++) {
+            row[i] = side.dist(targets[i]);
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source, stopping before the first
+     * vertex farther than limit. Only vertices within limit and their
+     * neighbors are touched, so the cost depends on the area reached,
+     * not on the size of the graph.
+     * @return the vertices within limit in order of distance, source
+     * first, whose distances distance() then gives
+     */
+    public int[] within(int source, double limit) {
+        begin(false, null);
+        Side side = forward;
+        side.label(source, 0.0, -1, 0.0);
+        int[] found = new int[16];
+        int count = 0;
+        while (!side.queue.isEmpty() && side.queue.minKey() <= limit) {
+            int current = side.queue.removeMin();
+            side.settle(current);
+            settledCount++;
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = current;
+            double base = side.dist[current];
+            for (int arc = graph.firstArc(current); arc < graph.endArc(current); arc++) {
+                int next = graph.target(arc);
+                if (side.settled(next)) continue;
+                double newDist = base + graph.weight(arc);
+                if (newDist < side.dist(next)) {
+                    side.label(next, newDist, current, newDist);
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Searches every upward path of the hierarchy from source, without a
+     * target, as many-to-many queries need. Stalled vertices are left
+     * out: their labels are not shortest distances, so no shortest path
+     * can meet there.
+     * @return the vertices settled and not stalled, whose distances
+     * distance() then gives
+     */
+    public int[] upward(ContractionHierarchy ch, int source) {
+        begin(false, null);
+        Side side = forward;
+        side.label(source, 0.0, -1, 0.0);
+        int[] found = new int[16];
+        int count = 0;
+        while (!side.queue.isEmpty()) {
+            int current = side.queue.removeMin();
+            side.settle(current);
+            settledCount++;
+            if (stalled(ch, current, side)) continue;
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = current;
+            double base = side.dist[current];
+            for (int arc = ch.firstUp(current); arc < ch.endUp(current); arc++) {
+                int next = ch.upTarget(arc);
+                if (side.settled(next)) continue;
+                double newDist = base + ch.upWeight(arc);
+                if (newDist < side.dist(next)) {
+                    side.label(next, newDist, current, newDist);
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    // true if a higher neighbor reaches v more cheaply than v's label
+    private static boolean stalled(ContractionHierarchy ch, int v, Side side) {
+        for (int arc = ch.firstUp(v); arc < ch.endUp(v); arc++) {
+            if (side.dist(ch.upTarget(arc)) + ch.upWeight(arc) < side.dist[v]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of vertices settled by the last search
+     */
+    public int settledCount() {
+        return settledCount;
+    }
+
+    /**
+     * @return the shortest distance found to v by the forward search
+     */
+    public double distance(int v) {
+        return forward.dist(v) * scale;
+    }
+
+    /**
+     * @return the points from the search's source to target, in order
+     */
+    public List<Point> path(int target) {
+        if (hierarchy != null) {
+            return unpackedPath();
+        }
+        List<Point> path = new ArrayList<>();
+        int meet = meeting >= 0 ? meeting : target;
+        for (int v = meet; v >= 0; v = forward.prev(v)) {
+            path.add(graph.point(v));
+        }
+        Collections.reverse(path);
+        if (meeting >= 0) {
+            for (int v = backward.prev(meeting); v >= 0; v = backward.prev(v)) {
+                path.add(graph.point(v));
+            }
+        }
+        return path;
+    }
+
+    // hierarchy vertices up to the meeting vertex and back down, with
+    // every hierarchy edge between them expanded into road edges
+    private List<Point> unpackedPath() {
+        int up = 0;
+        for (int v = meeting; v >= 0; v = forward.prev(v)) {
+            up++;
+        }
+        int length = up;
+        for (int v = backward.prev(meeting); v >= 0; v = backward.prev(v)) {
+            length++;
+        }
+        if (chain.length < length) {
+            chain = new int[Math.max(length, 2 * chain.length)];
+        }
+        int i = up;
+        for (int v = meeting; v >= 0; v = forward.prev(v)) {
+            chain[--i] = v;
+        }
+        i = up;
+        for (int v = backward.prev(meeting); v >= 0; v = backward.prev(v)) {
+            chain[i++] = v;
+        }
+        List<Point> path = new ArrayList<>();
+        path.add(graph.point(chain[0]));
+        for (int k = 1; k < length; k++) {
+            hierarchy.unpack(chain[k - 1], chain[k], path);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Orders stops for a short trip from a matrix of road distances, a
+ * heuristic for the traveling salesman problem. The first stop is where
+ * the trip starts; a round trip also ends there, an open trip ends at
+ * whichever stop is visited last.
+ * <p>
+ * A nearest-neighbor trip is improved by local search until no move
+ * shortens it. 2-opt reverses a stretch of the trip; Or-opt moves a run
+ * of up to three stops, either way round, to another place. If time is
+ * left, the best trip is repeatedly perturbed with a double bridge (cut
+ * into four parts and reconnected out of order, which local search does
+ * not undo easily) and searched again, and the result kept if shorter.
+ * Trips are arrays of stop indexes: position 0 holds the start and for
+ * a round trip one extra last position holds it again, so positions 1
+ * to n - 1 are the ones that move.
+ */
+public class StopOptimizer {
+    // shorter by less than this is not an improvement, so rounding in
+    // the distances cannot make the search cycle
+    private static final double EPSILON = 1e-9;
+    private static final int MAX_RUN = 3;
+    private static final long SEED = 7;
+    // perturbations in a row that find nothing shorter before giving up
+    // early, per stop
+    private static final int IDLE_KICKS_PER_STOP = 20;
+
+    private final double[][] dist;
+    private final int n;
+    private final boolean roundTrip;
+
+    /**
+     * @param distances distances[i][j] in miles from stop i to stop j,
+     * all finite; the smaller of the two directions is used for both
+     * @param roundTrip true if the trip returns to stop 0
+     * @throws IllegalArgumentException if the matrix is empty or not
+     * square, or has an infinite entry
+     */
+    public StopOptimizer(double[][] distances, boolean roundTrip) {
+        n = distances.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("no stops");
+        }
+        dist = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            if (distances[i].length != n) {
+                throw new IllegalArgumentException("distance matrix is not square");
+            }
+            for (int j = 0; j < n; j++) {
+                if (Double.isInfinite(distances[i][j]) || Double.isNaN(distances[i][j])) {
+                    throw new IllegalArgumentException("no distance from stop " + i + " to stop " + j);
+                }
+                dist[i][j] = Math.min(distances[i][j], distances[j][i]);
+            }
+        }
+        this.roundTrip = roundTrip;
+    }
+
+    /**
+     * Finds a short order in which to visit the stops.
+     * @param budgetMillis how long the local search may run; 0 gives the
+     * nearest-neighbor order unimproved
+     * @return the stop indexes in visiting order, starting with 0, each
+     * once; a round trip's return to 0 is not repeated
+     */
+    public int[] order(long budgetMillis) {
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000;
+        int[] trip = nearestNeighbor();
+        localSearch(trip, deadline);
+        // a double bridge needs two movable parts and something to move
+        if (n > 3) {
+            Random random = new Random(SEED);
+            double best = length(trip);
+            int idle = 0;
+            while (idle < IDLE_KICKS_PER_STOP * n && System.nanoTime() < deadline) {
+                int[] kicked = doubleBridge(trip, random);
+                localSearch(kicked, deadline);
+                double length = length(kicked);
+                if (length < best - EPSILON) {
+                    trip = kicked;
+                    best = length;
+                    idle = 0;
+                } else {
+                    idle++;
+                }
+            }
+        }
+        return Arrays.copyOf(trip, n);
+    }
+
+    /**
+     * @return the length in miles of visiting the stops in order, back to
+     * the first for a round trip
+     */
+    public double length(int[] order) {
+        double length = 0.0;
+        for (int i = 1; i < order.length; i++) {
+            length += dist[order[i - 1]][order[i]];
+        }
+        if (roundTrip && order.length == n) {
+            length += dist[order[n - 1]][order[0]];
+        }
+        return length;
+    }
+
+    private int[] nearestNeighbor() {
+        int[] trip = new int[roundTrip ? n + 1 : n];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        for (int i = 1; i < n; i++) {
+            int from = trip[i - 1];
+            int next = -1;
+            for (int s = 0; s < n; s++) {
+                if (!visited[s] && (next < 0 || dist[from][s] < dist[from][next])) {
+                    next = s;
+                }
+            }
+            trip[i] = next;
+            visited[next] = true;
+        }
+        return trip;
+    }
+
+    // distance from stop to the one after position i, 0 at an open end
+    private double toNext(int[] trip, int i, int stop) {
+        return i + 1 < trip.length ? dist[stop][trip[i + 1]] : 0.0;
+    }
+
+    private void localSearch(int[] trip, long deadline) {
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = twoOpt(trip, deadline);
+            improved |= orOpt(trip, deadline);
+        }
+    }
+
+    // applies every shortening reversal of trip[i..j] found in one pass
+    private boolean twoOpt(int[] trip, long deadline) {
+        boolean improved = false;
+        for (int i = 1; i < n - 1 && System.nanoTime() < deadline; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double delta = dist[trip[i - 1]][trip[j]] + toNext(trip, j, trip[i])
+                    - dist[trip[i - 1]][trip[i]] - toNext(trip, j, trip[j]);
+                if (delta < -EPSILON) {
+                    reverse(trip, i, j);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    // applies every shortening move of a run trip[i..e] found in one pass
+    private boolean orOpt(int[] trip, long deadline) {
+        boolean improved = false;
+        for (int length = 1; length <= MAX_RUN; length++) {
+            for (int i = 1; i + length <= n && System.nanoTime() < deadline; i++) {
+                int e = i + length - 1;
+                double removed = dist[trip[i - 1]][trip[i]] + toNext(trip, e, trip[e])
+                    - toNext(trip, e, trip[i - 1]);
+                // after the last movable position is before a round
+                // trip's return, or the new end of an open trip
+                for (int k = 0; k < n; k++) {
+                    if (k >= i - 1 && k <= e) {
+                        continue;
+                    }
+                    double gap = toNext(trip, k, trip[k]);
+                    double forward = dist[trip[k]][trip[i]] + toNext(trip, k, trip[e]) - gap;
+                    double backward = dist[trip[k]][trip[e]] + toNext(trip, k, trip[i]) - gap;
+                    boolean reversed = backward < forward;
+                    if (Math.min(forward, backward) - removed < -EPSILON) {
+                        move(trip, i, e, k, reversed);
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return improved;
+    }
+
+    // puts trip[i..e] right after position k, which is outside it
+    private static void move(int[] trip, int i, int e, int k, boolean reversed) {
+        int length = e - i + 1;
+        int[] run = Arrays.copyOfRange(trip, i, e + 1);
+        if (reversed) {
+            reverse(run, 0, length - 1);
+        }
+        if (k < i) {
+            System.arraycopy(trip, k + 1, trip, k + 1 + length, i - k - 1);
+            System.arraycopy(run, 0, trip, k + 1, length);
+        } else {
+            System.arraycopy(trip, e + 1, trip, i, k - e);
+            System.arraycopy(run, 0, trip, k - length + 1, length);
+        }
+    }
+
+    private static void reverse(int[] a, int i, int j) {
+        for (; i < j; i++, j--) {
+            int swap = a[i];
+            a[i] = a[j];
+            a[j] = swap;
+        }
+    }
+
+    // swaps the adjacent stretches trip[a..b) and trip[b..c), for random
+    // movable positions a < b < c <= n; the stretches keep their direction
+    private int[] doubleBridge(int[] trip, Random random) {
+        int[] cuts = {1 + random.nextInt(n), 1 + random.nextInt(n), 1 + random.nextInt(n)};
+        Arrays.sort(cuts);
+        int[] kicked = trip.clone();
+        int a = cuts[0];
+        int b = cuts[1];
+        int c = cuts[2];
+        if (a < b && b < c) {
+            System.arraycopy(trip, b, kicked, a, c - b);
+            System.arraycopy(trip, a, kicked, a + c - b, b - a);
+        }
+        return kicked;
+    }
+}
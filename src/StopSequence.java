@@ -0,0 +1,48 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of GraphProcessor.optimizeStops: the order in which to
+ * visit the stops and the full route through them.
+ */
+public class StopSequence {
+    private final int[] order;
+    private final List<Point> stops;
+    private final List<Point> route;
+    private final double distance;
+
+    StopSequence(int[] order, List<Point> stops, List<Point> route, double distance) {
+        this.order = order;
+        this.stops = Collections.unmodifiableList(stops);
+        this.route = Collections.unmodifiableList(route);
+        this.distance = distance;
+    }
+
+    /**
+     * @return the indexes of the stops, as given, in visiting order
+     */
+    public int[] order() {
+        return order.clone();
+    }
+
+    /**
+     * @return the stops, as given, in visiting order
+     */
+    public List<Point> stops() {
+        return stops;
+    }
+
+    /**
+     * @return the road route through the stops, each snapped to the graph
+     */
+    public List<Point> route() {
+        return route;
+    }
+
+    /**
+     * @return the length of the route in miles
+     */
+    public double distance() {
+        return distance;
+    }
+}
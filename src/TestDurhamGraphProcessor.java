@@ -0,0 +1,484 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Testing GraphProcessor's alternative routing algorithms on the Durham
+ * data, a small piece of the real highway network, by comparing each
+ * against plain Dijkstra on every pair of vertices
+ */
+public class TestDurhamGraphProcessor {
+	GraphProcessor durhamDriver = new GraphProcessor();
+	String durhamGraphFile = "data/durham.graph";
+	List<Point> vertices;
+
+	// Setup to initialize driver before tests
+	@BeforeEach
+	public void setup() throws Exception {
+		try {
+			durhamDriver.initialize(new FileInputStream(durhamGraphFile));
+		} catch(FileNotFoundException filenotFound) {
+			assertTrue(false, "File not found; please follow the project description for instructions on either" +
+						"a) changing your settings.json or b) replacing durhamGraphFile with its absolute path!");
+		}
+		vertices = durhamDriver.nearestPoints(new Point(36.0, -78.9), 1000);
+	}
+
+	/**
+	 * Tests that every algorithm finds routes exactly as long as Dijkstra's.
+	 * A route that skipped between points that are not adjacent would come
+	 * out shorter, since straight lines are never longer than roads
+	 */
+	@Test
+	public void testRouteAlgorithms() {
+		durhamDriver.buildContractionHierarchy();
+		durhamDriver.buildLandmarks(2, Landmarks.Selection.AVOID);
+		durhamDriver.buildHubLabels();
+		IntegerWeights weights = durhamDriver.buildIntegerWeights(0.01);
+		for (RouteAlgorithm algorithm : RouteAlgorithm.values()) {
+			for (Point start : vertices) {
+				for (Point end : vertices) {
+					if (start.equals(end) || !durhamDriver.connected(start, end)) {
+						continue;
+					}
+					List<Point> shortest = durhamDriver.route(start, end);
+					double expected = durhamDriver.routeDistance(shortest);
+					List<Point> actual = durhamDriver.route(start, end, algorithm);
+					assertEquals(start, actual.get(0));
+					assertEquals(end, actual.get(actual.size() - 1));
+					// only the rounded lengths of BUCKET may give a longer route
+					double tolerance = algorithm != RouteAlgorithm.BUCKET ? 1e-9
+						: weights.errorBound(actual.size() - 1, shortest.size() - 1);
+					assertTrue(durhamDriver.routeDistance(actual) >= expected - 1e-9, algorithm + " shorter than Dijkstra");
+					assertEquals(expected, durhamDriver.routeDistance(actual), tolerance,
+						algorithm + " route from " + start + " to " + end);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests that contracting on several threads gives the same hierarchy
+	 * for any thread count, and that it answers queries like Dijkstra
+	 */
+	@Test
+	public void testParallelContraction() {
+		ContractionHierarchy one = durhamDriver.buildContractionHierarchy(1);
+		ContractionHierarchy four = durhamDriver.buildContractionHierarchy(4);
+		assertEquals(one.shortcutCount(), four.shortcutCount());
+		for (Point p : vertices) {
+			int v = one.graph().vertexId(p);
+			assertEquals(one.rank(v), four.rank(v), "rank of " + p);
+		}
+		for (Point start : vertices) {
+			for (Point end : vertices) {
+				if (start.equals(end) || !durhamDriver.connected(start, end)) {
+					continue;
+				}
+				double expected = durhamDriver.routeDistance(durhamDriver.route(start, end));
+				List<Point> actual = durhamDriver.route(start, end, RouteAlgorithm.CH);
+				assertEquals(expected, durhamDriver.routeDistance(actual), 1e-9,
+					"route from " + start + " to " + end);
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> durhamDriver.buildContractionHierarchy(0));
+	}
+
+	/**
+	 * Tests that both landmark selections give lower bounds that never
+	 * exceed the true distance, and that ALT finds shortest routes with
+	 * either
+	 */
+	@Test
+	public void testLandmarks() {
+		for (Landmarks.Selection selection : Landmarks.Selection.values()) {
+			Landmarks landmarks = durhamDriver.buildLandmarks(4, selection);
+			assertEquals(4, landmarks.count(), selection + " landmark count");
+			RoadGraph graph = landmarks.graph();
+			for (Point start : vertices) {
+				for (Point end : vertices) {
+					if (start.equals(end) || !durhamDriver.connected(start, end)) {
+						continue;
+					}
+					double expected = durhamDriver.routeDistance(durhamDriver.route(start, end));
+					double bound = landmarks.lowerBound(graph.vertexId(start), graph.vertexId(end));
+					assertTrue(bound <= expected + 1e-9, selection + " bound from " + start + " to " + end);
+					List<Point> actual = durhamDriver.route(start, end, RouteAlgorithm.ALT);
+					assertEquals(expected, durhamDriver.routeDistance(actual), 1e-9,
+						selection + " route from " + start + " to " + end);
+				}
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> durhamDriver.buildLandmarks(0, Landmarks.Selection.FARTHEST));
+	}
+
+	/**
+	 * Tests that hub label distances match the routes Dijkstra finds
+	 */
+	@Test
+	public void testHubLabels() {
+		HubLabels labels = durhamDriver.buildHubLabels();
+		assertTrue(labels.totalLabelSize() >= labels.graph().size(), "every label holds its own vertex");
+		for (Point start : vertices) {
+			for (Point end : vertices) {
+				double expected = start.equals(end) ? 0.0
+					: durhamDriver.connected(start, end) ? durhamDriver.routeDistance(durhamDriver.route(start, end))
+					: Double.POSITIVE_INFINITY;
+				assertEquals(expected, durhamDriver.shortestDistance(start, end), 1e-9,
+					"distance from " + start + " to " + end);
+			}
+		}
+	}
+
+	/**
+	 * Tests that both ways of filling the distance matrix agree with the
+	 * distances of the routes Dijkstra finds
+	 */
+	@Test
+	public void testDistanceMatrix() {
+		List<Point> sources = vertices.subList(0, vertices.size() * 2 / 3);
+		List<Point> targets = vertices.subList(vertices.size() / 3, vertices.size());
+		double[][] searched = durhamDriver.distanceMatrix(sources, targets);
+		durhamDriver.buildContractionHierarchy();
+		double[][] bucketed = durhamDriver.distanceMatrix(sources, targets);
+		for (int i = 0; i < sources.size(); i++) {
+			for (int j = 0; j < targets.size(); j++) {
+				Point start = sources.get(i);
+				Point end = targets.get(j);
+				double expected = start.equals(end) ? 0.0
+					: durhamDriver.connected(start, end) ? durhamDriver.routeDistance(durhamDriver.route(start, end))
+					: Double.POSITIVE_INFINITY;
+				assertEquals(expected, searched[i][j], 1e-9, "searched distance from " + start + " to " + end);
+				assertEquals(expected, bucketed[i][j], 1e-9, "bucketed distance from " + start + " to " + end);
+			}
+		}
+	}
+
+	/**
+	 * Tests that a one-to-many search still finds its targets after the
+	 * workspace's generation counter wraps around, when stamps left by
+	 * earlier searches could match the new generation
+	 */
+	@Test
+	public void testOneToManyAfterGenerationWrap() throws Exception {
+		RouteSearch search = new RouteSearch(durhamDriver.snapshot().graph());
+		int source = durhamDriver.snapshot().graph().vertexId(vertices.get(0));
+		int[] targets = new int[vertices.size()];
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = durhamDriver.snapshot().graph().vertexId(vertices.get(i));
+		}
+		double[] expected = new double[targets.length];
+		search.oneToMany(source, targets, expected);
+		java.lang.reflect.Field generation = RouteSearch.class.getDeclaredField("generation");
+		generation.setAccessible(true);
+		generation.setInt(search, Integer.MAX_VALUE);
+		double[] row = new double[targets.length];
+		search.oneToMany(source, targets, row);
+		assertArrayEquals(expected, row);
+		assertTrue(Arrays.stream(row).filter(d -> d > 0 && d < Double.POSITIVE_INFINITY).count() > 0);
+	}
+
+	/**
+	 * Tests that routing a batch on several threads gives every route
+	 * route gives, in input order, with null where route would throw
+	 */
+	@Test
+	public void testRouteAll() {
+		List<Point[]> pairs = new ArrayList<>();
+		for (Point start : vertices) {
+			for (Point end : vertices) {
+				pairs.add(new Point[] {start, end});
+			}
+		}
+		durhamDriver.buildContractionHierarchy();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			for (RouteAlgorithm algorithm : Arrays.asList(RouteAlgorithm.DIJKSTRA, RouteAlgorithm.CH)) {
+				List<List<Point>> routes = durhamDriver.routeAll(pairs, algorithm, pool);
+				assertEquals(pairs.size(), routes.size());
+				for (int i = 0; i < pairs.size(); i++) {
+					Point start = pairs.get(i)[0];
+					Point end = pairs.get(i)[1];
+					if (start.equals(end) || !durhamDriver.connected(start, end)) {
+						assertNull(routes.get(i), algorithm + " route from " + start + " to itself or another component");
+						continue;
+					}
+					assertEquals(durhamDriver.route(start, end, algorithm), routes.get(i),
+						algorithm + " route from " + start + " to " + end);
+				}
+			}
+			assertThrows(IllegalStateException.class,
+				() -> durhamDriver.routeAll(pairs, RouteAlgorithm.ALT, pool));
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(10, durhamDriver.routeAll(pairs.subList(0, 10)).size());
+	}
+
+	/**
+	 * Tests that one processor answers route, nearestPoint and
+	 * lastSettledCount correctly from several threads at once, while
+	 * another thread builds preprocessing
+	 */
+	@Test
+	public void testConcurrentQueries() throws Exception {
+		Map<String, List<Point>> expected = new HashMap<>();
+		for (Point start : vertices) {
+			for (Point end : vertices) {
+				if (!start.equals(end) && durhamDriver.connected(start, end)) {
+					expected.put(start + " " + end, durhamDriver.route(start, end));
+				}
+			}
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			tasks.add(pool.submit(() -> durhamDriver.buildHubLabels()));
+			for (int t = 0; t < 3; t++) {
+				tasks.add(pool.submit(() -> {
+					for (Point start : vertices) {
+						assertEquals(start, durhamDriver.nearestPoint(start));
+						for (Point end : vertices) {
+							List<Point> want = expected.get(start + " " + end);
+							if (want != null) {
+								assertEquals(want, durhamDriver.route(start, end));
+								assertTrue(durhamDriver.lastSettledCount() > 0);
+							}
+						}
+					}
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertTrue(durhamDriver.hasContractionHierarchy());
+		assertNotNull(durhamDriver.snapshot().hubLabels());
+	}
+
+	/**
+	 * Tests that cached routes match fresh ones in both directions, and
+	 * that the cache stays within its limits and counts what it does
+	 */
+	@Test
+	public void testRouteCache() throws Exception {
+		List<Point[]> pairs = new ArrayList<>();
+		List<List<Point>> expected = new ArrayList<>();
+		for (Point start : vertices) {
+			for (Point end : vertices) {
+				if (!start.equals(end) && durhamDriver.connected(start, end)) {
+					pairs.add(new Point[] {start, end});
+					expected.add(durhamDriver.route(start, end));
+				}
+			}
+		}
+		RouteCache cache = durhamDriver.enableRouteCache(pairs.size(), Long.MAX_VALUE);
+		for (int i = 0; i < pairs.size(); i++) {
+			Point[] pair = pairs.get(i);
+			List<Point> route = durhamDriver.route(pair[0], pair[1]);
+			assertEquals(pair[0], route.get(0));
+			assertEquals(pair[1], route.get(route.size() - 1));
+			assertEquals(durhamDriver.routeDistance(expected.get(i)), durhamDriver.routeDistance(route), 1e-9,
+				"cached route from " + pair[0] + " to " + pair[1]);
+		}
+		// every pair is asked both ways, so half the lookups were hits
+		assertEquals(pairs.size() / 2, cache.misses());
+		assertEquals(pairs.size() / 2, cache.hits());
+		assertEquals(pairs.size() / 2, cache.size());
+		assertEquals(0, cache.evictions());
+		Point[] pair = pairs.get(0);
+		assertEquals(durhamDriver.route(pair[0], pair[1]), durhamDriver.route(pair[0], pair[1]));
+		assertEquals(0, durhamDriver.lastSettledCount());
+
+		cache = durhamDriver.enableRouteCache(5, 2000);
+		for (Point[] p : pairs) {
+			durhamDriver.route(p[0], p[1]);
+			assertTrue(cache.size() <= 5);
+			assertTrue(cache.bytes() <= 2000);
+		}
+		assertTrue(cache.evictions() > 0);
+		assertEquals(pairs.size(), cache.hits() + cache.misses());
+
+		durhamDriver.initialize(new FileInputStream(durhamGraphFile));
+		// a new graph drops the old routes before this one is stored
+		assertFalse(durhamDriver.route(pair[0], pair[1]).isEmpty());
+		assertEquals(1, cache.size());
+
+		// routes rounded at one resolution are not served for another
+		cache = durhamDriver.enableRouteCache(pairs.size(), Long.MAX_VALUE);
+		durhamDriver.buildIntegerWeights(0.1);
+		for (Point[] p : pairs) {
+			durhamDriver.route(p[0], p[1], RouteAlgorithm.BUCKET);
+		}
+		IntegerWeights weights = durhamDriver.buildIntegerWeights(0.01);
+		long misses = cache.misses();
+		for (int i = 0; i < pairs.size(); i++) {
+			List<Point> route = durhamDriver.route(pairs.get(i)[0], pairs.get(i)[1], RouteAlgorithm.BUCKET);
+			double shortest = durhamDriver.routeDistance(expected.get(i));
+			assertEquals(shortest, durhamDriver.routeDistance(route),
+				weights.errorBound(route.size() - 1, expected.get(i).size() - 1), "BUCKET route after new weights");
+		}
+		assertEquals(misses + pairs.size() / 2, cache.misses());
+		durhamDriver.disableRouteCache();
+		assertNull(durhamDriver.routeCache());
+	}
+
+	/**
+	 * Tests that routing through waypoints joins the legs route finds,
+	 * once each junction, after snapping waypoints to the graph
+	 */
+	@Test
+	public void testWaypoints() {
+		Point first = vertices.get(0);
+		List<Point> stops = new ArrayList<>();
+		for (Point p : vertices) {
+			if (!p.equals(first) && durhamDriver.connected(first, p) && stops.size() < 3) {
+				stops.add(p);
+			}
+		}
+		stops.add(0, first);
+		double expected = 0.0;
+		for (int i = 1; i < stops.size(); i++) {
+			expected += durhamDriver.routeDistance(durhamDriver.route(stops.get(i - 1), stops.get(i)));
+		}
+		// a waypoint just off the graph snaps to the point beside it
+		List<Point> waypoints = new ArrayList<>(stops);
+		waypoints.set(1, new Point(stops.get(1).getLat() + 1e-6, stops.get(1).getLon()));
+		waypoints.add(2, stops.get(1));
+		int settled = 0;
+		for (int i = 1; i < stops.size(); i++) {
+			durhamDriver.route(stops.get(i - 1), stops.get(i));
+			settled += durhamDriver.lastSettledCount();
+		}
+		durhamDriver.route(stops.get(0), stops.get(1));
+		List<Point> path = durhamDriver.route(waypoints);
+		assertEquals(settled, durhamDriver.lastSettledCount());
+		assertEquals(first, path.get(0));
+		assertEquals(stops.get(stops.size() - 1), path.get(path.size() - 1));
+		assertEquals(expected, durhamDriver.routeDistance(path), 1e-9);
+		for (int i = 1; i < path.size(); i++) {
+			assertNotEquals(path.get(i - 1), path.get(i), "repeated point at " + i);
+		}
+		assertThrows(IllegalArgumentException.class, () -> durhamDriver.route(List.of(first)));
+		assertThrows(IllegalArgumentException.class, () -> durhamDriver.route(List.of(first, first)));
+		assertThrows(IllegalStateException.class, () -> durhamDriver.route(stops, RouteAlgorithm.CH));
+	}
+
+	/**
+	 * Tests that optimizeStops visits every stop once from the first, no
+	 * longer than in the given order, and as short as the best order when
+	 * there are few enough stops to try them all
+	 */
+	@Test
+	public void testOptimizeStops() {
+		Point first = vertices.get(0);
+		List<Point> stops = new ArrayList<>();
+		for (Point p : vertices) {
+			if (durhamDriver.connected(first, p) && stops.size() < 8) {
+				stops.add(p);
+			}
+		}
+		double[][] distances = durhamDriver.distanceMatrix(stops, stops);
+		for (boolean roundTrip : new boolean[] {false, true}) {
+			StopSequence trip = durhamDriver.optimizeStops(stops, roundTrip, 1000);
+			int[] order = trip.order();
+			assertEquals(0, order[0]);
+			assertEquals(new HashSet<>(stops), new HashSet<>(trip.stops()));
+			assertEquals(stops.size(), trip.stops().size());
+			List<Point> route = trip.route();
+			assertEquals(first, route.get(0));
+			assertEquals(roundTrip ? first : trip.stops().get(stops.size() - 1), route.get(route.size() - 1));
+			assertEquals(durhamDriver.routeDistance(route), trip.distance(), 1e-9);
+
+			int[] given = new int[stops.size()];
+			for (int i = 0; i < given.length; i++) {
+				given[i] = i;
+			}
+			assertTrue(trip.distance() <= tripLength(distances, given, roundTrip) + 1e-9);
+			assertEquals(shortestTrip(distances, given, 1, roundTrip), trip.distance(), 1e-9,
+				roundTrip ? "round trip" : "open trip");
+		}
+		assertThrows(IllegalArgumentException.class, () -> durhamDriver.optimizeStops(List.of(first), false, 10));
+	}
+
+	private static double tripLength(double[][] distances, int[] order, boolean roundTrip) {
+		double length = 0.0;
+		for (int i = 1; i < order.length; i++) {
+			length += distances[order[i - 1]][order[i]];
+		}
+		return roundTrip ? length + distances[order[order.length - 1]][order[0]] : length;
+	}
+
+	// the shortest trip over every order of order[from..]
+	private static double shortestTrip(double[][] distances, int[] order, int from, boolean roundTrip) {
+		if (from == order.length) {
+			return tripLength(distances, order, roundTrip);
+		}
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = from; i < order.length; i++) {
+			int swap = order[from];
+			order[from] = order[i];
+			order[i] = swap;
+			best = Math.min(best, shortestTrip(distances, order, from + 1, roundTrip));
+			order[i] = order[from];
+			order[from] = swap;
+		}
+		return best;
+	}
+
+	/**
+	 * Tests that reachableWithin finds exactly the points within the
+	 * distance, with their shortest distances, inside their outline
+	 */
+	@Test
+	public void testReachableWithin() {
+		Point origin = vertices.get(0);
+		List<Double> all = new ArrayList<>();
+		for (Point p : vertices) {
+			all.add(durhamDriver.shortestDistance(origin, p));
+		}
+		Collections.sort(all);
+		double miles = all.get(all.size() / 2);
+		Reachable reached = durhamDriver.reachableWithin(origin, miles);
+		assertEquals(origin, reached.point(0));
+		assertEquals(0.0, reached.distance(0));
+		Set<Point> inside = new HashSet<>();
+		for (int i = 0; i < reached.size(); i++) {
+			Point p = reached.point(i);
+			inside.add(p);
+			assertEquals(durhamDriver.shortestDistance(origin, p), reached.distance(i), 1e-9);
+			assertTrue(i == 0 || reached.distance(i - 1) <= reached.distance(i));
+		}
+		for (Point p : vertices) {
+			assertEquals(durhamDriver.shortestDistance(origin, p) <= miles, inside.contains(p), p.toString());
+		}
+		assertEquals(reached.size(), reached.vertices().length);
+		assertEquals(reached.size(), reached.distances().length);
+
+		List<Point> outline = reached.outline();
+		assertTrue(outline.size() >= 3);
+		for (int i = 0; i < outline.size(); i++) {
+			Point a = outline.get(i);
+			Point b = outline.get((i + 1) % outline.size());
+			assertTrue(inside.contains(a));
+			for (Point p : inside) {
+				double cross = (b.getLon() - a.getLon()) * (p.getLat() - a.getLat())
+					- (b.getLat() - a.getLat()) * (p.getLon() - a.getLon());
+				assertTrue(cross >= -1e-12, p + " outside the outline");
+			}
+		}
+
+		assertEquals(1, durhamDriver.reachableWithin(origin, 0.0).size());
+		assertThrows(IllegalArgumentException.class, () -> durhamDriver.reachableWithin(origin, -1.0));
+		assertThrows(IllegalArgumentException.class, () -> durhamDriver.reachableWithin(new Point(0, 0), 1.0));
+	}
+}
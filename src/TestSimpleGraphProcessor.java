@@ -5,7 +5,13 @@ import org.junit.jupiter.api.*;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.zip.CRC32;
 
 
 /**
@@ -100,6 +106,77 @@ public class TestSimpleGraphProcessor {
 	
 	}
 
+    /**
+     * Tests that every routing algorithm finds a path as short as Dijkstra's
+     * between every connected pair of points, and rejects the same pairs
+     */
+	@Test public void testRouteAlgorithms() {
+		simpleDriver.buildContractionHierarchy();
+		simpleDriver.buildLandmarks(2, Landmarks.Selection.AVOID);
+		simpleDriver.buildHubLabels();
+		IntegerWeights weights = simpleDriver.buildIntegerWeights(0.01);
+		List<Point> vertices = simpleDriver.nearestPoints(new Point(0, 0), 10);
+		for (RouteAlgorithm algorithm : RouteAlgorithm.values()) {
+			for (Point start : vertices) {
+				for (Point end : vertices) {
+					if (start.equals(end) || !simpleDriver.connected(start, end)) {
+						assertThrows(IllegalArgumentException.class, () -> simpleDriver.route(start, end, algorithm));
+						continue;
+					}
+					List<Point> expected = simpleDriver.route(start, end);
+					List<Point> actual = simpleDriver.route(start, end, algorithm);
+					assertEquals(start, actual.get(0), algorithm + " route start");
+					assertEquals(end, actual.get(actual.size() - 1), algorithm + " route end");
+					// only the rounded lengths of BUCKET may give a longer route
+					double tolerance = algorithm != RouteAlgorithm.BUCKET ? 1e-9
+						: weights.errorBound(actual.size() - 1, expected.size() - 1);
+					assertEquals(simpleDriver.routeDistance(expected), simpleDriver.routeDistance(actual), tolerance,
+						algorithm + " route from " + start + " to " + end);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests that shortestDistance gives the length of the shortest route,
+	 * with and without hub labels
+	 */
+	@Test public void testShortestDistance() {
+		for (int pass = 0; pass < 2; pass++) {
+			// A to F, A to A, D to J
+			assertEquals(166.93, simpleDriver.shortestDistance(new Point(2, -1), new Point(1, 1)), 0.03);
+			assertEquals(0.0, simpleDriver.shortestDistance(new Point(2, -1), new Point(2, -1)));
+			assertEquals(Double.POSITIVE_INFINITY, simpleDriver.shortestDistance(new Point(1, -1), new Point(-1, 1)));
+			assertThrows(IllegalArgumentException.class, () -> simpleDriver.shortestDistance(new Point(5, 5), new Point(1, 1)));
+			simpleDriver.buildHubLabels();
+		}
+	}
+
+	/**
+	 * Tests that every entry of the distance matrix is the shortest route
+	 * distance, with one search per source and with the hierarchy
+	 */
+	@Test public void testDistanceMatrix() {
+		List<Point> sources = Arrays.asList(new Point(2, -1), new Point(1, 1), new Point(0, 0));
+		List<Point> targets = Arrays.asList(new Point(1, 1), new Point(2, -1), new Point(-1, 1), new Point(1, 1));
+		for (int pass = 0; pass < 2; pass++) {
+			double[][] matrix = simpleDriver.distanceMatrix(sources, targets);
+			assertEquals(3, matrix.length);
+			// A to F, F to A, F to F
+			assertEquals(166.93, matrix[0][0], 0.03);
+			assertEquals(166.93, matrix[1][1], 0.03);
+			assertEquals(0.0, matrix[1][0]);
+			assertEquals(matrix[0][0], matrix[0][3]);
+			// A and F are not connected to J; G is connected only to J
+			assertEquals(Double.POSITIVE_INFINITY, matrix[0][2]);
+			assertEquals(Double.POSITIVE_INFINITY, matrix[2][0]);
+			assertEquals(simpleDriver.routeDistance(simpleDriver.route(new Point(0, 0), new Point(-1, 1))), matrix[2][2], 1e-9);
+			simpleDriver.buildContractionHierarchy();
+		}
+		assertThrows(IllegalArgumentException.class,
+			() -> simpleDriver.distanceMatrix(sources, Arrays.asList(new Point(5, 5))));
+	}
+
     /**
      * Tests that driver returns the distance along a given route represented as a List<Point> input
      * Tests only if .routeDistsance() is correct (i.e. can pass even if .route() is incorect)
@@ -132,6 +209,194 @@ public class TestSimpleGraphProcessor {
 		   "You mistakenly claim two points representing Durham NC and Raleigh NC's nearest points, respectively, are not connected. This test is designed if .connected() is correct, even if .nearestPoint() is faulty"); 
 	}
  
+	/**
+	 * Tests that the spatial index gives exactly the vertex a scan over
+	 * the vertices in file order would, including on ties
+	 */
+	@Test
+	public void testNearestPointMatchesScan() {
+		List<Point> vertices = Arrays.asList(new Point(2, -1), new Point(2, 0), new Point(2, 1),
+			new Point(1, -1), new Point(1, 0), new Point(1, 1), new Point(0, 0),
+			new Point(-1, -1), new Point(-1, 0), new Point(-1, 1));
+		for (double lat = -2; lat <= 3; lat += 0.25) {
+			for (double lon = -2; lon <= 2; lon += 0.25) {
+				Point query = new Point(lat, lon);
+				Point expected = null;
+				for (Point v : vertices) {
+					if (expected == null || v.distance(query) < expected.distance(query)) {
+						expected = v;
+					}
+				}
+				assertEquals(expected, simpleDriver.nearestPoint(query), "nearest point to " + query);
+			}
+		}
+	}
+
+	/**
+	 * Tests that the k nearest points come back closest first
+	 */
+	@Test
+	public void testNearestPoints() {
+		Point query = new Point(1.8, -0.1);
+		List<Point> nearest = simpleDriver.nearestPoints(query, 4);
+		assertEquals(Arrays.asList(new Point(2, 0), new Point(1, 0), new Point(2, -1), new Point(2, 1)), nearest);
+		assertEquals(simpleDriver.nearestPoint(query), nearest.get(0));
+		assertEquals(10, simpleDriver.nearestPoints(query, 50).size());
+		assertTrue(simpleDriver.nearestPoints(query, 0).isEmpty());
+	}
+
+	/**
+	 * Tests that snapping can be restricted to one connected component
+	 */
+	@Test
+	public void testNearestConnectedPoint() {
+		// H is closest to the query but cannot be reached from A; D is the closest that can
+		Point l = simpleCityLookup.get("L L");
+		Point a = new Point(2, -1);
+		assertEquals(new Point(-1, -1), simpleDriver.nearestPoint(new Point(-1.1, -1.1)));
+		assertEquals(new Point(1, -1), simpleDriver.nearestConnectedPoint(new Point(-1.1, -1.1), a));
+		assertEquals(simpleDriver.componentOf(new Point(-1, 1)), simpleDriver.componentOf(new Point(0, 0)));
+		assertNotEquals(simpleDriver.componentOf(a), simpleDriver.componentOf(new Point(0, 0)));
+		assertEquals(-1, simpleDriver.componentOf(new Point(5, 5)));
+
+		Point snapped = simpleDriver.nearestConnectedPoint(l, a);
+		assertTrue(simpleDriver.connected(a, snapped));
+		assertThrows(IllegalArgumentException.class, () -> simpleDriver.nearestConnectedPoint(l, new Point(5, 5)));
+	}
+
+	/**
+	 * Tests radius and bounding box queries against the simple graph
+	 */
+	@Test
+	public void testPointsWithinAndInBox() {
+		// E and I are one degree (69.17 miles) from G, every other vertex is farther
+		Set<Point> within = new HashSet<>(simpleDriver.pointsWithin(new Point(0, 0), 70));
+		assertEquals(new HashSet<>(Arrays.asList(new Point(0, 0), new Point(1, 0), new Point(-1, 0))), within);
+		assertTrue(simpleDriver.pointsWithin(new Point(5, 5), 10).isEmpty());
+
+		Set<Point> box = new HashSet<>(simpleDriver.pointsInBox(new Point(2, 1), new Point(1, 0)));
+		assertEquals(new HashSet<>(Arrays.asList(new Point(2, 0), new Point(2, 1), new Point(1, 0), new Point(1, 1))), box);
+	}
+
+	/**
+	 * Tests that a graph written in the binary format loads back into a
+	 * driver that answers queries the same way as the text format
+	 */
+	@Test
+	public void testBinaryFormat() throws IOException {
+		File binary = File.createTempFile("simple", ".bgraph");
+		binary.deleteOnExit();
+		try (FileInputStream in = new FileInputStream(simpleGraphFile);
+			 FileOutputStream out = new FileOutputStream(binary)) {
+			BinaryGraphFormat.write(GraphData.parse(in.getChannel()), out.getChannel());
+		}
+		GraphProcessor binaryDriver = new GraphProcessor();
+		binaryDriver.initialize(new FileInputStream(binary));
+
+		assertEquals(simpleDriver.route(new Point(2, -1), new Point(1, 1)),
+			binaryDriver.route(new Point(2, -1), new Point(1, 1)));
+		assertEquals(simpleDriver.nearestPoint(new Point(-1.2, -0.9)),
+			binaryDriver.nearestPoint(new Point(-1.2, -0.9)));
+		assertFalse(binaryDriver.connected(new Point(2, -1), new Point(-1, 1)));
+	}
+
+	/**
+	 * Tests that the byte-level .graph parser reads edge labels, signs,
+	 * exponents and mantissas too long for the fast path exactly as a
+	 * Scanner does, and rejects a file cut short anywhere
+	 */
+	@Test
+	public void testTextParser() throws IOException {
+		String text = "4 4\n"
+			+ "A 1.5e1 +2.5\n"
+			+ "B -0.0 35.123456789012345678901\n"
+			+ "C 0.1 -78.90000000000000000001\n"
+			+ "D 36.0000001 1E-3\n"
+			+ "0 1 I-85\n"
+			+ "1 2\n"
+			+ "2 3 US-70\n"
+			+ "3 0 label\n";
+		GraphData data = parseText(text);
+
+		Scanner in = new Scanner(text).useLocale(Locale.US);
+		int numVert = in.nextInt();
+		int numEdges = in.nextInt();
+		assertEquals(numVert, data.vertexCount());
+		assertEquals(numEdges, data.edgeCount());
+		for (int i = 0; i < numVert; i++) {
+			assertEquals(in.next(), data.name(i));
+			assertEquals(Double.doubleToRawLongBits(in.nextDouble()), Double.doubleToRawLongBits(data.lat(i)),
+				"latitude of " + data.name(i));
+			assertEquals(Double.doubleToRawLongBits(in.nextDouble()), Double.doubleToRawLongBits(data.lon(i)),
+				"longitude of " + data.name(i));
+		}
+		for (int k = 0; k < numEdges; k++) {
+			assertEquals(in.nextInt(), data.edgeFrom(k));
+			assertEquals(in.nextInt(), data.edgeTo(k));
+			if (in.hasNext() && !in.hasNextInt()) {
+				in.next();
+			}
+		}
+
+		// every prefix that ends before the last edge is complete
+		int complete = text.lastIndexOf("3 0") + 3;
+		for (int length = 0; length < complete; length++) {
+			String truncated = text.substring(0, length);
+			assertThrows(IOException.class, () -> parseText(truncated), "cut after " + length + " bytes");
+		}
+		assertThrows(IOException.class, () -> parseText("1 0\nA north 2.0\n"));
+		assertThrows(IOException.class, () -> parseText("2 1\nA 1 2\nB 3 4\n0 2\n"));
+	}
+
+	private static GraphData parseText(String text) throws IOException {
+		File file = File.createTempFile("parser", ".graph");
+		try {
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				out.write(text.getBytes("UTF-8"));
+			}
+			try (FileInputStream in = new FileInputStream(file)) {
+				return GraphData.parse(in.getChannel());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Tests that a binary file with a valid checksum but name offsets
+	 * out of order or past the names is rejected with IOException
+	 */
+	@Test
+	public void testBinaryFormatBadOffsets() throws IOException {
+		File binary = File.createTempFile("simple", ".bgraph");
+		binary.deleteOnExit();
+		try (FileInputStream in = new FileInputStream(simpleGraphFile);
+			 FileOutputStream out = new FileOutputStream(binary)) {
+			BinaryGraphFormat.write(GraphData.parse(in.getChannel()), out.getChannel());
+		}
+		byte[] good = Files.readAllBytes(binary.toPath());
+		ByteBuffer header = ByteBuffer.wrap(good).order(ByteOrder.LITTLE_ENDIAN);
+		int numVert = header.getInt(8);
+		int numEdges = header.getInt(12);
+		int offsets = 20 + 16 * numVert + 8 * numEdges;
+		// a decreasing offset, a nonzero first one and a last one past the names
+		int[][] changes = {{offsets + 4 * 2, 100}, {offsets, 1}, {offsets + 4 * numVert, 1000}};
+		for (int[] change : changes) {
+			ByteBuffer bad = ByteBuffer.wrap(good.clone()).order(ByteOrder.LITTLE_ENDIAN);
+			bad.putInt(change[0], change[1]);
+			CRC32 crc = new CRC32();
+			crc.update(bad.array(), 0, good.length - Long.BYTES);
+			bad.putLong(good.length - Long.BYTES, crc.getValue());
+			Files.write(binary.toPath(), bad.array());
+			IOException e = assertThrows(IOException.class, () -> {
+				try (FileInputStream in = new FileInputStream(binary)) {
+					BinaryGraphFormat.read(in.getChannel());
+				}
+			});
+			assertTrue(e.getMessage().contains("bad name offsets"), e.getMessage());
+		}
+	}
+
     // helper method to check if a point's distance to input is within 3% of the true nearest point's distance to input
 	private static boolean inRange(double resPathDist, double truePathDist) {
 		return (resPathDist > 0.97 * truePathDist && resPathDist < 1.03 * truePathDist);
@@ -117,6 +117,25 @@ public class Visualize {
         StdDraw.setYscale(lat2y(myMinLatitude), lat2y(myMaxLatitude));
     }
 
+    /**
+     * Draws the closed outline through the given corners on the
+     * imageFile, such as Reachable.outline returns
+     */
+    public void drawPolygon(List<Point> corners) {
+        if (corners == null || corners.size() == 0) {
+            return;
+        }
+        double[] x = new double[corners.size()];
+        double[] y = new double[corners.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = corners.get(i).getLon();
+            y[i] = lat2y(corners.get(i).getLat());
+        }
+        StdDraw.setPenRadius(EDGE_SIZE);
+        StdDraw.polygon(x, y);
+        StdDraw.show();
+    }
+
     public void drawPointSet(Set<Point> points) {
         for (Point p : points) {
             drawPoint(p);